@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MappingComposer} with Lorenz's own merge and reverse, on the compositions {@link MappingsProvider}
+ * does. Setup reports whether both produce the same classes, fields and methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappingComposerBenchmark {
+	@Param("")
+	public String intermediate;
+
+	@Param("")
+	public String named;
+
+	private MappingSet intermediateMappings;
+	private MappingSet namedMappings;
+	private final MappingComposer composer = new MappingComposer();
+
+	@Setup
+	public void setup() throws IOException {
+		if (intermediate.isEmpty() || named.isEmpty()) {
+			throw new IllegalArgumentException("Pass -Pintermediate=<file> and -Pnamed=<file> pointing at tiny mappings");
+		}
+
+		intermediateMappings = MappingsProvider.readMappings(new File(intermediate));
+		namedMappings = MappingsProvider.readMappings(new File(named));
+
+		compare("merged", lorenzMerged(), composerMerged());
+		compare("target", lorenzTarget(), composerTarget());
+	}
+
+	private static void compare(String name, MappingSet lorenz, MappingSet composer) {
+		boolean identical = members(lorenz).equals(members(composer));
+		System.out.println(name + " mappings identical to Lorenz: " + identical);
+	}
+
+	// Parameters are left out, Lorenz doesn't carry them through merges consistently
+	private static Set<String> members(MappingSet mappings) {
+		Set<String> members = new HashSet<>();
+
+		for (ClassMapping<?, ?> mapping : mappings.getTopLevelClassMappings()) {
+			addMembers(mapping, members);
+		}
+
+		return members;
+	}
+
+	private static void addMembers(ClassMapping<?, ?> mapping, Set<String> members) {
+		String owner = mapping.getFullObfuscatedName();
+		members.add("class " + owner + " -> " + mapping.getFullDeobfuscatedName());
+
+		for (FieldMapping field : mapping.getFieldMappings()) {
+			String type = field.getType().map(Object::toString).orElse("");
+			members.add("field " + owner + "." + field.getObfuscatedName() + ":" + type + " -> " + field.getDeobfuscatedName());
+		}
+
+		for (MethodMapping method : mapping.getMethodMappings()) {
+			members.add("method " + owner + "." + method.getObfuscatedName() + method.getObfuscatedDescriptor() + " -> " + method.getDeobfuscatedName());
+		}
+
+		for (ClassMapping<?, ?> inner : mapping.getInnerClassMappings()) {
+			addMembers(inner, members);
+		}
+	}
+
+	@Benchmark
+	public MappingSet lorenzMerged() {
+		return intermediateMappings.merge(namedMappings);
+	}
+
+	@Benchmark
+	public MappingSet composerMerged() {
+		return composer.merge(intermediateMappings, namedMappings);
+	}
+
+	@Benchmark
+	public MappingSet lorenzTarget() {
+		return intermediateMappings.reverse().merge(namedMappings).reverse();
+	}
+
+	@Benchmark
+	public MappingSet composerTarget() {
+		return composer.reverse(composer.merge(composer.reverse(intermediateMappings), namedMappings));
+	}
+}
@@ -39,8 +39,21 @@ public static final class Tasks {
 		public static final String DECOMPILE = "decompile";
 		public static final String RUN_CLIENT = "runClient";
 		public static final String RUN_SERVER = "runServer";
+		public static final String BENCHMARK_SERVER = "benchmarkServer";
 
 		public static final String REMAP_PREFIX = "remap";
+
+		public static final String PREFETCH = "quiltPrefetch";
+		public static final String EXPORT_CACHE = "quiltExportCache";
+		public static final String IMPORT_CACHE = "quiltImportCache";
+		public static final String SERVE_CACHE = "quiltServeCache";
+	}
+
+	public static final class Properties {
+		/**
+		 * Gradle property pointing at a cache archive to import when the plugin is applied, before any cache is used
+		 */
+		public static final String IMPORT_CACHE = "quilt.importCache";
 	}
 
 	public static final class Locations {
@@ -54,6 +67,13 @@ public static final class Locations {
 		public static final String GLOBAL_CACHE = "caches/quilt-gradle";
 
 		public static final String REPO = "repo";
+		public static final String HIERARCHY = "hierarchy";
+		public static final String CLASSES = "classes";
+		public static final String NESTED = "nested";
+		public static final String REMOTE = "remote";
+		public static final String EXPLODED = "exploded";
+		public static final String LOADER_LIBRARIES = "loader-libraries";
+		public static final String LIBRARIES = "libraries";
 		public static final String RUN_DIRECTORY = "run";
 	}
 }
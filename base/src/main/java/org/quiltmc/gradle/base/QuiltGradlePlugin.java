@@ -23,35 +23,57 @@
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.DependencySet;
+import org.gradle.api.artifacts.ResolvableDependencies;
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
 import org.gradle.api.plugins.BasePlugin;
 import org.gradle.api.plugins.JavaLibraryPlugin;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.gradle.plugins.ide.eclipse.EclipsePlugin;
 import org.gradle.plugins.ide.idea.IdeaPlugin;
+import org.quiltmc.gradle.base.api.GameJarSource;
 import org.quiltmc.gradle.base.api.QuiltGradleExtension;
 import org.quiltmc.gradle.base.impl.QuiltGradleExtensionImpl;
 import org.quiltmc.gradle.base.task.*;
+import org.quiltmc.gradle.base.util.CacheArchive;
+import org.quiltmc.gradle.base.util.ClassCache;
+import org.quiltmc.gradle.base.util.ClassHierarchyIndex;
+import org.quiltmc.gradle.base.util.ExplodedJar;
+import org.quiltmc.gradle.base.util.LibrarySnapshot;
 import org.quiltmc.gradle.base.util.MappingsProvider;
+import org.quiltmc.gradle.base.util.MemoryScheduler;
+import org.quiltmc.gradle.base.util.NestedJars;
 import org.quiltmc.gradle.base.util.QuiltLoaderHelper;
+import org.quiltmc.gradle.base.util.SpeculativeWorkService;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 public class QuiltGradlePlugin implements Plugin<Project> {
 	private Project project;
+	private QuiltGradleExtension extension;
 	public File projectCache;
 	public File globalCache;
 	public File projectRepo;
 	public File globalRepo;
 
+	private final List<GameJarSource> gameJarSources = new ArrayList<>();
+	private LibrarySnapshot librarySnapshot;
+	private QuiltLoaderHelper loaderHelper;
+	private Provider<SpeculativeWorkService> speculativeWork;
+	private Provider<MemoryScheduler> scheduler;
+
 	@Override
     public void apply(Project project) {
 		this.project = project;
@@ -66,7 +88,7 @@ public void apply(Project project) {
 
 
 		// Setup extensions
-		QuiltGradleExtension extension = project.getExtensions().create(Constants.EXTENSION, QuiltGradleExtensionImpl.class, project, this);
+		extension = project.getExtensions().create(Constants.EXTENSION, QuiltGradleExtensionImpl.class, project, this);
 
 
 		// Setup caches
@@ -78,6 +100,28 @@ public void apply(Project project) {
 		projectRepo.mkdirs();
 		globalRepo.mkdirs();
 
+		// Import a cache archive before anything looks the caches up, so nothing it holds is downloaded or remapped again
+		Object cacheArchive = project.findProperty(Constants.Properties.IMPORT_CACHE);
+		if (cacheArchive != null) {
+			try {
+				int imported = CacheArchive.importOnce(project.file(cacheArchive).toPath(), globalCache.toPath());
+
+				if (imported >= 0) {
+					project.getLogger().lifecycle("QuiltGradle: Imported " + imported + " files into " + globalCache);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to import cache archive " + cacheArchive, e);
+			}
+		}
+
+		librarySnapshot = new LibrarySnapshot(project, new File(projectCache, Constants.Locations.LIBRARIES));
+		loaderHelper = new QuiltLoaderHelper(project, new File(projectCache, Constants.Locations.LOADER_LIBRARIES), librarySnapshot);
+		speculativeWork = project.getGradle().getSharedServices().registerIfAbsent("quiltSpeculativeWork", SpeculativeWorkService.class, spec -> {});
+		// Shared by every project, so the budget of the first one to apply the plugin is used
+		scheduler = project.getGradle().getSharedServices().registerIfAbsent("quiltRemapScheduler", MemoryScheduler.class, spec ->
+				spec.getParameters().getBudget().set(extension.getRemapMemoryBudget().map(budget -> (long) budget << 20))
+		);
+
 
 		// Setup repositories
 		project.getRepositories().maven(repo -> {
@@ -105,10 +149,45 @@ public void apply(Project project) {
 		project.getRepositories().mavenCentral();
 
 
+		// Setup cache tasks
+		registerTask(Constants.Tasks.PREFETCH, PrefetchTask.class, task -> {});
+
+		registerTask(Constants.Tasks.EXPORT_CACHE, ExportCacheTask.class, task -> {
+			task.getCache().set(globalCache);
+		});
+
+		registerTask(Constants.Tasks.IMPORT_CACHE, ImportCacheTask.class, task -> {
+			task.getCache().set(globalCache);
+		});
+
+		registerTask(Constants.Tasks.SERVE_CACHE, ServeCacheTask.class, task -> {
+			task.getDirectory().set(new File(globalCache, Constants.Locations.REMOTE));
+		});
+
+
 		// Run source set configuration
 		registerPerSourceSet(this::setupSourceSet);
 	}
 
+	/**
+	 * @return the snapshot of resolved libraries, for game plugins to provide their libraries through
+	 */
+	public LibrarySnapshot getLibrarySnapshot() {
+		return librarySnapshot;
+	}
+
+	private void materializeGameJars(ResolvableDependencies incoming) {
+		for (Dependency dependency : incoming.getDependencies()) {
+			for (GameJarSource source : gameJarSources) {
+				try {
+					source.materialize(dependency);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to provide game jar " + dependency.getName(), e);
+				}
+			}
+		}
+	}
+
 	private void setupSourceSet(SourceSet sourceSet) {
 		// Setup configurations
 		Configuration gameConf = createConfiguration(Constants.Configurations.GAME, sourceSet);
@@ -131,6 +210,7 @@ private void setupSourceSet(SourceSet sourceSet) {
 		);
 
 		Map<Configuration, Configuration> modConfigurations = new HashMap<>();
+		Set<Configuration> compileOnlyModConfigurations = new HashSet<>();
 
 		for (Map.Entry<String, String> config : modConfigs.entrySet()) {
 			if (project.getConfigurations().stream().noneMatch(conf -> conf.getName().equals(config.getKey()))) {
@@ -148,17 +228,38 @@ private void setupSourceSet(SourceSet sourceSet) {
 			project.getConfigurations().getByName(config.getKey()).extendsFrom(remappedConf);
 
 			modConfigurations.put(conf, remappedConf);
+
+			if (config.getValue().equals(JavaPlugin.COMPILE_ONLY_CONFIGURATION_NAME) || config.getValue().equals(JavaPlugin.COMPILE_ONLY_API_CONFIGURATION_NAME)) {
+				compileOnlyModConfigurations.add(conf);
+			}
 		}
 
 		project.getConfigurations().getByName(JavaPlugin.IMPLEMENTATION_CONFIGURATION_NAME, conf ->
 				conf.extendsFrom(remappedGameConf, gameLibrariesConf, loaderLibrariesConf)
 		);
 
+		project.getTasks().named(Constants.Tasks.PREFETCH, PrefetchTask.class, task -> {
+			// Resolving the game itself would write the jars game sources keep in memory, only fetch what they don't provide
+			task.getConfigurations().add(project.provider(() -> {
+				Configuration unprovided = project.getConfigurations().detachedConfiguration(gameConf.getDependencies().stream()
+						.filter(dependency -> gameJarSources.stream().noneMatch(source -> source.provides(dependency)))
+						.toArray(Dependency[]::new));
+				unprovided.getIncoming().beforeResolve(this::materializeGameJars);
+				return unprovided;
+			}));
+			task.getConfigurations().addAll(remappedGameConf, loaderConf, mappingsConf, intermediateConf, viaConf, gameLibrariesConf, loaderLibrariesConf);
+			task.getConfigurations().addAll(modConfigurations.keySet());
+			task.getConfigurations().addAll(modConfigurations.values());
+		});
+
+		// Game sources may skip writing the game jar, make sure it exists whenever it's actually resolved
+		gameConf.getIncoming().beforeResolve(this::materializeGameJars);
+
 
 		// Setup after evaluation
 		project.afterEvaluate(action -> {
 			boolean supportsRemapping = false;
-			MappingsProvider mappingsProvider = new MappingsProvider();
+			MappingsProvider mappingsProvider = new MappingsProvider(extension.getParallelMappings().get());
 
 			// Setup dependencies
 			if (gameConf.getDependencies().size() > 1) throw new IllegalStateException("Multiple game dependencies specified for source set "+sourceSet.getName()+".");
@@ -182,9 +283,24 @@ private void setupSourceSet(SourceSet sourceSet) {
 
 			mappingsProvider.setViaConf(viaConf);
 
+			ClassHierarchyIndex hierarchyIndex = new ClassHierarchyIndex(new File(globalCache, Constants.Locations.HIERARCHY), mappingsProvider);
+			hierarchyIndex.setGameConf(remappedGameConf);
+			hierarchyIndex.addLibrariesConf(gameLibrariesConf);
+			hierarchyIndex.addLibrariesConf(loaderLibrariesConf);
+
+			// Mods are updated often with most classes unchanged, the game is covered by the hierarchy and mappings diff
+			ClassCache classCache = new ClassCache(new File(globalCache, Constants.Locations.CLASSES).toPath());
+			NestedJars nestedJars = new NestedJars(new File(globalCache, Constants.Locations.NESTED).toPath());
+
+			try {
+				classCache.prune();
+				hierarchyIndex.prune();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to prune the remapping caches", e);
+			}
+
 
 			// TODO: Temporary until loader includes these libraries in its POM
-			QuiltLoaderHelper loaderHelper = new QuiltLoaderHelper(project);
 			try {
 				loaderHelper.provideLibraries(loaderConf, loaderLibrariesConf);
 			} catch (Exception e) {
@@ -195,16 +311,25 @@ private void setupSourceSet(SourceSet sourceSet) {
 			// Setup tasks
 			registerTask(Constants.Tasks.DECOMPILE, DecompileJarTask.class, sourceSet, task -> {
 				task.getConfiguration().set(gameConf);
+				task.getWorkerProcess().set(extension.getWorkerProcess());
+				task.getWorkerHeap().set(extension.getWorkerHeap());
 			});
 
 			registerTask(Constants.Tasks.RUN_CLIENT, RunGameTask.class, sourceSet, task -> {
 				task.setClasspath(sourceSet.getRuntimeClasspath());
 				task.getMainClass().set("org.quiltmc.loader.impl.launch.knot.KnotClient");
+				task.getHotSwapDirectories().from(sourceSet.getOutput().getClassesDirs());
 			});
 
 			registerTask(Constants.Tasks.RUN_SERVER, RunGameTask.class, sourceSet, task -> {
 				task.setClasspath(sourceSet.getRuntimeClasspath());
 				task.getMainClass().set("org.quiltmc.loader.impl.launch.knot.KnotServer");
+				task.getHotSwapDirectories().from(sourceSet.getOutput().getClassesDirs());
+			});
+
+			registerTask(Constants.Tasks.BENCHMARK_SERVER, BenchmarkServerTask.class, sourceSet, task -> {
+				task.setClasspath(sourceSet.getRuntimeClasspath());
+				task.getMainClass().set("org.quiltmc.loader.impl.launch.knot.KnotServer");
 			});
 
 			if (!supportsRemapping) {
@@ -216,6 +341,10 @@ private void setupSourceSet(SourceSet sourceSet) {
 				TaskProvider<RemapJarTask> remapJarTask = registerRemapTask(sourceSet.getJarTaskName(), RemapJarTask.class, task -> {
 					task.getJar().set(project.getTasks().named(sourceSet.getJarTaskName(), AbstractArchiveTask.class).get().getArchiveFile().get().getAsFile());
 					task.getMappingsProvider().set(mappingsProvider);
+					task.getHierarchyIndex().set(hierarchyIndex);
+					task.getCompression().set(extension.getPublishCompression());
+					task.getWorkerProcess().set(extension.getWorkerProcess());
+					task.getWorkerHeap().set(extension.getWorkerHeap());
 					task.dependsOn(sourceSet.getJarTaskName());
 				});
 
@@ -239,30 +368,113 @@ private void setupSourceSet(SourceSet sourceSet) {
 			// Dependency remapping tasks
 			TaskProvider<RemapGameTask> remapGameTask = registerRemapTask(Constants.Configurations.GAME, RemapGameTask.class, sourceSet, task -> {
 				task.getConfiguration().set(gameConf);
+				task.getGameJarSources().set(gameJarSources);
 				task.getMappingsProvider().set(mappingsProvider);
+				task.getHierarchyIndex().set(hierarchyIndex);
+				task.getCompression().set(extension.getCacheCompression());
+				task.getRemoteCache().set(extension.getRemoteCache());
+				task.getScheduler().set(scheduler);
+				task.usesService(scheduler);
 				task.getDirectory().set(globalRepo);
 				task.dependsOn(gameConf);
+
+				if (extension.getSpeculativeGameRemap().get()) {
+					task.getSpeculativeWork().set(speculativeWork);
+				}
 			});
 
 			for (Dependency dependency : remapGameTask.get().getOutputDependencies().get()) {
 				project.getDependencies().add(remappedGameConf.getName(), dependency);
 			}
 
+			// The game may still be remapping in the background, anything resolving it has to wait
+			remappedGameConf.getIncoming().beforeResolve(incoming -> remapGameTask.get().awaitOutputs());
+
+			File explodedDir = new File(projectCache, Constants.Locations.EXPLODED + "/" + sourceSet.getName());
+
+			if (extension.getExplodeGame().get()) {
+				// Only the compile and runtime classpaths get the directory, the hierarchy index keeps using the jar
+				File gameDir = new File(explodedDir, "game");
+				AtomicBoolean exploded = new AtomicBoolean();
+
+				Configuration implementation = project.getConfigurations().getByName(JavaPlugin.IMPLEMENTATION_CONFIGURATION_NAME);
+				Set<Configuration> parents = new LinkedHashSet<>(implementation.getExtendsFrom());
+				parents.remove(remappedGameConf);
+				implementation.setExtendsFrom(parents);
+
+				// Exploded once the classpath is resolved rather than now, the game may still be remapping in the background
+				project.getDependencies().add(implementation.getName(), project.files((Callable<File>) () -> {
+					if (exploded.compareAndSet(false, true)) {
+						explode(remappedGameConf.getSingleFile(), gameDir);
+					}
+
+					return gameDir;
+				}));
+			}
+
 			for (Map.Entry<Configuration, Configuration> entry : modConfigurations.entrySet()) {
 				TaskProvider<RemapDependencyTask> remapTask = registerRemapTask(entry.getKey().getName(), RemapDependencyTask.class, task -> {
 					task.getConfiguration().set(entry.getKey());
 					task.getMappingsProvider().set(mappingsProvider);
+					task.getHierarchyIndex().set(hierarchyIndex);
+					task.getCompression().set(extension.getCacheCompression());
+					task.getClassCache().set(classCache);
+					task.getNestedJars().set(nestedJars);
+					task.getRemoteCache().set(extension.getRemoteCache());
+					task.getScheduler().set(scheduler);
+					task.usesService(scheduler);
+					task.getStubs().set(compileOnlyModConfigurations.contains(entry.getKey()) && extension.getStubCompileOnlyMods().get());
 					task.getDirectory().set(globalRepo);
 					task.dependsOn(entry.getKey());
 				});
 
-				for (Dependency dependency : remapTask.get().getOutputDependencies().get()) {
-					project.getDependencies().add(entry.getValue().getName(), dependency);
-				}
+				RemapDependencyTask task = remapTask.get();
+				boolean explodeMods = extension.getExplodeMods().get() && !task.getStubs().get();
+
+				// Mods are remapped against the game, so they're only remapped once something resolves them. Until then
+				// the game can keep remapping in the background, along with the rest of the build's configuration.
+				entry.getValue().withDependencies(dependencies -> {
+					File modsDir = new File(explodedDir, "mods/" + entry.getKey().getName());
+					Set<Path> modDirs = new HashSet<>();
+
+					for (Dependency dependency : task.getOutputDependencies().get()) {
+						if (explodeMods) {
+							// Named without the mappings version, so a mappings update rewrites only what changed
+							File modDir = new File(modsDir, dependency.getGroup() + "/" + dependency.getName());
+							Configuration detached = project.getConfigurations().detachedConfiguration(dependency);
+							detached.setTransitive(false);
+
+							explode(detached.getSingleFile(), modDir);
+							modDirs.add(modDir.toPath());
+							dependencies.add(project.getDependencies().create(project.files(modDir)));
+						} else {
+							dependencies.add(dependency);
+						}
+					}
+
+					// Mods which were removed or updated to another version leave their old directory behind
+					try {
+						ExplodedJar.retain(modsDir.toPath(), modDirs);
+					} catch (IOException e) {
+						throw new UncheckedIOException("Failed to clean up exploded mods", e);
+					}
+				});
 			}
 		});
 	}
 
+	private void explode(File jar, File directory) {
+		try {
+			int changed = ExplodedJar.sync(jar, directory.toPath());
+
+			if (changed > 0) {
+				project.getLogger().lifecycle("QuiltGradle: Updated " + changed + " files of " + project.relativePath(directory));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to explode " + jar.getName(), e);
+		}
+	}
+
 	public void registerPerSourceSet(Consumer<SourceSet> action) {
 		// Run consumers per source set
 		SourceSetContainer sourceSets = project.getExtensions().getByType(JavaPluginExtension.class).getSourceSets();
@@ -270,6 +482,10 @@ public void registerPerSourceSet(Consumer<SourceSet> action) {
 		sourceSets.whenObjectAdded(action::accept);
 	}
 
+	public void registerGameJarSource(GameJarSource source) {
+		gameJarSources.add(source);
+	}
+
 	public Configuration getConfigurationPerSourceSet(String conf, SourceSet sourceSet) {
 		return project.getConfigurations().getByName(QuiltGradlePlugin.getNamePerSourceSet(conf, sourceSet));
 	}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.api;
+
+import org.gradle.api.artifacts.Dependency;
+import org.quiltmc.gradle.base.util.JarWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Produces the classes of a game dependency in memory, so it can be remapped without writing its jar to disk first.
+ */
+public interface GameJarSource {
+	/**
+	 * @return whether this source should produce the given dependency instead of it being resolved
+	 */
+	boolean provides(Dependency dependency);
+
+	/**
+	 * Makes sure the jar of the given dependency exists on disk, for anything that resolves it.
+	 */
+	void materialize(Dependency dependency) throws IOException;
+
+	/**
+	 * Writes the classes of the given dependency to the writer. Non-class entries written to it take precedence over
+	 * the ones of the returned jars.
+	 * @return the jars to copy the non-class entries of the dependency from, earlier jars taking precedence
+	 */
+	List<Path> writeClasses(Dependency dependency, JarWriter writer) throws IOException;
+}
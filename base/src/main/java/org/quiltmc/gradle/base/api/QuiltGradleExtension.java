@@ -19,6 +19,7 @@
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.SourceSet;
 
 import java.util.function.Consumer;
@@ -33,10 +34,93 @@ static QuiltGradleExtension get(Project project) {
 	DirectoryProperty getProjectRepo();
 	DirectoryProperty getGlobalRepo();
 
+	/**
+	 * Deflate level for remapped jars stored in the caches, defaults to the fastest level.
+	 * {@link java.util.zip.Deflater#NO_COMPRESSION} stores classes uncompressed.
+	 */
+	Property<Integer> getCacheCompression();
+
+	/**
+	 * Deflate level for remapped jars meant to be published, defaults to the default level.
+	 */
+	Property<Integer> getPublishCompression();
+
+	/**
+	 * Whether the remapped game is put on the classpath as a directory in the project cache rather than a jar, defaults
+	 * to false. Files keep their timestamps unless their content changes, so IDEs only reindex what changed.
+	 */
+	Property<Boolean> getExplodeGame();
+
+	/**
+	 * Whether remapped mods are put on the classpath as directories, like {@link #getExplodeGame()}. API stubs are
+	 * always kept as jars.
+	 */
+	Property<Boolean> getExplodeMods();
+
+	/**
+	 * Whether mods on compile only configurations are remapped to API stubs without code or resources, defaults to
+	 * true. Stubs only change when the API of a mod does, which keeps compilation up to date more often.
+	 */
+	Property<Boolean> getStubCompileOnlyMods();
+
+	/**
+	 * Heap in megabytes that concurrent dependency and game remaps may take together, defaults to half the maximum heap.
+	 * Remaps estimated to take more than this run on their own. The budget is shared by all projects of the build, the
+	 * one of the first project applying QuiltGradle is used.
+	 */
+	Property<Integer> getRemapMemoryBudget();
+
+	/**
+	 * Whether the game is merged and remapped in the background as soon as its mappings are known, defaults to false.
+	 * Configuration carries on meanwhile and only waits for it once something resolves the remapped game, which mods
+	 * and the exploded game only do once their own configurations are resolved. Other source sets and projects keep
+	 * configuring, and remapping their own game, in the meantime. The remap is cancelled if the build ends without
+	 * needing it.
+	 */
+	Property<Boolean> getSpeculativeGameRemap();
+
+	/**
+	 * Whether to merge and reverse mappings in parallel with {@link org.quiltmc.gradle.base.util.MappingComposer} rather
+	 * than with Lorenz, defaults to false.
+	 */
+	Property<Boolean> getParallelMappings();
+
+	/**
+	 * Whether to remap and decompile in a separate worker process with its own heap, defaults to false. Gradle keeps
+	 * the process alive between builds, so it stays warm and keeps the mappings it read in memory.
+	 */
+	Property<Boolean> getWorkerProcess();
+
+	/**
+	 * Maximum heap size of the worker process, defaults to {@code 2G}.
+	 */
+	Property<String> getWorkerHeap();
+
+	/**
+	 * URL of an HTTP remote cache to download remapped and merged jars from when the global cache misses.
+	 */
+	Property<String> getRemoteCacheUrl();
+
+	/**
+	 * Whether to upload jars missing from the remote cache, defaults to false. Usually only enabled on CI.
+	 */
+	Property<Boolean> getRemoteCachePush();
+
+	/**
+	 * The remote cache to use, defaults to an HTTP cache at {@link #getRemoteCacheUrl()} if set.
+	 */
+	Property<RemoteCache> getRemoteCache();
+
 	/**
 	 * Registers a consumer to be run in every source set after evaluation.
 	 * @param action the consumer to run
 	 */
 	void registerPerSourceSet(Consumer<SourceSet> action);
 	Configuration getConfigurationPerSourceSet(String conf, SourceSet sourceSet);
+
+	/**
+	 * Registers a source that produces game dependencies in memory when remapping them.
+	 * @param source the source to register
+	 */
+	void registerGameJarSource(GameJarSource source);
 }
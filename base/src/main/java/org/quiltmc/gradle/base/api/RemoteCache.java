@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.api;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Shared store for remapped and merged jars, consulted only when the global cache doesn't have a jar yet.
+ * <p>
+ * Keys identify the inputs of a jar and the mappings it was produced with, so entries never have to be invalidated.
+ * Implementations are expected to verify what they load and to treat an unreachable remote as a miss.
+ */
+public interface RemoteCache {
+	/**
+	 * Downloads the entry with the given key to the target.
+	 * @return whether the entry existed and was written to the target
+	 */
+	boolean load(String key, Path target) throws IOException;
+
+	/**
+	 * Uploads a file under the given key, if this cache accepts uploads.
+	 */
+	void store(String key, Path source) throws IOException;
+}
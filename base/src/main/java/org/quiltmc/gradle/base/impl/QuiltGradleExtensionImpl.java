@@ -20,13 +20,19 @@
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.SourceSet;
 import org.quiltmc.gradle.base.Constants;
 import org.quiltmc.gradle.base.QuiltGradlePlugin;
+import org.quiltmc.gradle.base.api.GameJarSource;
 import org.quiltmc.gradle.base.api.QuiltGradleExtension;
+import org.quiltmc.gradle.base.api.RemoteCache;
+import org.quiltmc.gradle.base.util.HttpRemoteCache;
 
 import java.io.File;
+import java.net.URI;
 import java.util.function.Consumer;
+import java.util.zip.Deflater;
 
 public class QuiltGradleExtensionImpl implements QuiltGradleExtension {
 	private final ObjectFactory factory;
@@ -35,12 +41,44 @@ public class QuiltGradleExtensionImpl implements QuiltGradleExtension {
 	private final DirectoryProperty projectCache;
 	private final DirectoryProperty globalCache;
 
+	private final Property<Integer> cacheCompression;
+	private final Property<Integer> publishCompression;
+
+	private final Property<Boolean> explodeGame;
+	private final Property<Boolean> explodeMods;
+	private final Property<Boolean> stubCompileOnlyMods;
+	private final Property<Integer> remapMemoryBudget;
+	private final Property<Boolean> speculativeGameRemap;
+	private final Property<Boolean> parallelMappings;
+	private final Property<Boolean> workerProcess;
+	private final Property<String> workerHeap;
+
+	private final Property<String> remoteCacheUrl;
+	private final Property<Boolean> remoteCachePush;
+	private final Property<RemoteCache> remoteCache;
+
 	public QuiltGradleExtensionImpl(Project project, QuiltGradlePlugin plugin) {
 		this.factory = project.getObjects();
 		this.plugin = plugin;
 
 		this.projectCache = factory.directoryProperty().fileValue(new File(project.getProjectDir(), Constants.Locations.PROJECT_CACHE));
 		this.globalCache = factory.directoryProperty().fileValue(new File(project.getGradle().getGradleUserHomeDir(), Constants.Locations.GLOBAL_CACHE));
+
+		this.cacheCompression = factory.property(Integer.class).convention(Deflater.BEST_SPEED);
+		this.publishCompression = factory.property(Integer.class).convention(Deflater.DEFAULT_COMPRESSION);
+
+		this.explodeGame = factory.property(Boolean.class).convention(false);
+		this.explodeMods = factory.property(Boolean.class).convention(false);
+		this.stubCompileOnlyMods = factory.property(Boolean.class).convention(true);
+		this.remapMemoryBudget = factory.property(Integer.class).convention((int) (Runtime.getRuntime().maxMemory() / 2 >> 20));
+		this.speculativeGameRemap = factory.property(Boolean.class).convention(false);
+		this.parallelMappings = factory.property(Boolean.class).convention(false);
+		this.workerProcess = factory.property(Boolean.class).convention(false);
+		this.workerHeap = factory.property(String.class).convention("2G");
+
+		this.remoteCacheUrl = factory.property(String.class);
+		this.remoteCachePush = factory.property(Boolean.class).convention(false);
+		this.remoteCache = factory.property(RemoteCache.class).convention(remoteCacheUrl.zip(remoteCachePush, (url, push) -> new HttpRemoteCache(URI.create(url), push)));
 	}
 
 
@@ -64,6 +102,71 @@ public DirectoryProperty getGlobalRepo() {
 		return this.factory.directoryProperty().fileValue(new File(globalCache.get().getAsFile(), Constants.Locations.REPO));
 	}
 
+	@Override
+	public Property<Integer> getCacheCompression() {
+		return this.cacheCompression;
+	}
+
+	@Override
+	public Property<Integer> getPublishCompression() {
+		return this.publishCompression;
+	}
+
+	@Override
+	public Property<Boolean> getExplodeGame() {
+		return this.explodeGame;
+	}
+
+	@Override
+	public Property<Boolean> getExplodeMods() {
+		return this.explodeMods;
+	}
+
+	@Override
+	public Property<Boolean> getStubCompileOnlyMods() {
+		return this.stubCompileOnlyMods;
+	}
+
+	@Override
+	public Property<Integer> getRemapMemoryBudget() {
+		return this.remapMemoryBudget;
+	}
+
+	@Override
+	public Property<Boolean> getSpeculativeGameRemap() {
+		return this.speculativeGameRemap;
+	}
+
+	@Override
+	public Property<Boolean> getParallelMappings() {
+		return this.parallelMappings;
+	}
+
+	@Override
+	public Property<Boolean> getWorkerProcess() {
+		return this.workerProcess;
+	}
+
+	@Override
+	public Property<String> getWorkerHeap() {
+		return this.workerHeap;
+	}
+
+	@Override
+	public Property<String> getRemoteCacheUrl() {
+		return this.remoteCacheUrl;
+	}
+
+	@Override
+	public Property<Boolean> getRemoteCachePush() {
+		return this.remoteCachePush;
+	}
+
+	@Override
+	public Property<RemoteCache> getRemoteCache() {
+		return this.remoteCache;
+	}
+
 	@Override
 	public void registerPerSourceSet(Consumer<SourceSet> action) {
 		plugin.registerPerSourceSet(action);
@@ -73,4 +176,9 @@ public void registerPerSourceSet(Consumer<SourceSet> action) {
 	public Configuration getConfigurationPerSourceSet(String conf, SourceSet sourceSet) {
 		return plugin.getConfigurationPerSourceSet(conf, sourceSet);
 	}
+
+	@Override
+	public void registerGameJarSource(GameJarSource source) {
+		plugin.registerGameJarSource(source);
+	}
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.jfr;
+
+import org.cadixdev.lorenz.MappingSet;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.quiltmc.gradle.ComposeMappings")
+@Label("Compose Mappings")
+public class ComposeMappingsEvent extends QuiltGradleEvent {
+	@Label("Operation")
+	String operation;
+
+	@Label("Mappings")
+	String mappings;
+
+	@Label("Class Count")
+	int classCount;
+
+	/**
+	 * Ends and commits this event.
+	 * @param operation either merge or reverse
+	 * @param mappings describes the mappings being composed, such as the coordinate of an intermediate
+	 */
+	public void finish(String operation, String mappings, MappingSet result) {
+		end();
+
+		if (shouldCommit()) {
+			this.operation = operation;
+			this.mappings = mappings;
+			this.classCount = result.getTopLevelClassMappings().size();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+
+@Name("org.quiltmc.gradle.Decompile")
+@Label("Decompile")
+public class DecompileEvent extends QuiltGradleEvent {
+	@Label("Jar")
+	String jar;
+
+	@Label("Size")
+	@DataAmount
+	long size;
+
+	@Label("Class Count")
+	int classCount;
+
+	/**
+	 * Ends and commits this event.
+	 */
+	public void finish(File jar) {
+		end();
+
+		if (shouldCommit()) {
+			this.jar = jar.getName();
+			this.size = jar.length();
+			this.classCount = countClasses(jar.toPath());
+			commit();
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+
+@Name("org.quiltmc.gradle.Download")
+@Label("Download")
+public class DownloadEvent extends QuiltGradleEvent {
+	@Label("Artifact")
+	String artifact;
+
+	@Label("Size")
+	@DataAmount
+	long size;
+
+	@Label("Cache Hit")
+	boolean cacheHit;
+
+	/**
+	 * Ends and commits this event.
+	 * @param file the downloaded file, or null if there was nothing to download
+	 */
+	public void finish(String artifact, File file, boolean cacheHit) {
+		end();
+
+		if (shouldCommit()) {
+			this.artifact = artifact;
+			this.size = file == null ? 0 : file.length();
+			this.cacheHit = cacheHit;
+			commit();
+		}
+	}
+}
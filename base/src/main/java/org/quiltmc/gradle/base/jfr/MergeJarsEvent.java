@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.function.IntSupplier;
+
+@Name("org.quiltmc.gradle.MergeJars")
+@Label("Merge Jars")
+public class MergeJarsEvent extends QuiltGradleEvent {
+	@Label("Version")
+	String version;
+
+	@Label("Input Size")
+	@DataAmount
+	long size;
+
+	@Label("Class Count")
+	int classCount;
+
+	@Label("In Memory")
+	boolean inMemory;
+
+	/**
+	 * Ends and commits this event.
+	 * @param size the combined size of the merged jars
+	 * @param classCount counts the merged classes, only called if the event is recorded
+	 */
+	public void finish(String version, long size, IntSupplier classCount, boolean inMemory) {
+		end();
+
+		if (shouldCommit()) {
+			this.version = version;
+			this.size = size;
+			this.classCount = classCount.getAsInt();
+			this.inMemory = inMemory;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+
+/**
+ * Base of the Flight Recorder events emitted by QuiltGradle, grouping them together in JMC.
+ * <p>
+ * Events are only filled in and committed if a recording asks for them, so attributes which cost something to compute,
+ * like class counts, are computed after {@link #shouldCommit()}.
+ */
+@Category("QuiltGradle")
+public abstract class QuiltGradleEvent extends Event {
+	/**
+	 * @return the number of classes in the given jar, or -1 if it can't be read
+	 */
+	public static int countClasses(Path jar) {
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			return (int) zip.stream().filter(entry -> entry.getName().endsWith(".class")).count();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+}
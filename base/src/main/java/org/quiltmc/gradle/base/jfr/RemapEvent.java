@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.nio.file.Path;
+
+@Name("org.quiltmc.gradle.Remap")
+@Label("Remap")
+public class RemapEvent extends QuiltGradleEvent {
+	public static final String CACHE_LOCAL = "local";
+	public static final String CACHE_REMOTE = "remote";
+	public static final String CACHE_MISS = "miss";
+
+	@Label("Jar")
+	String jar;
+
+	@Label("Size")
+	@DataAmount
+	long size;
+
+	@Label("Class Count")
+	int classCount;
+
+	@Label("Namespace")
+	String namespace;
+
+	@Label("Mappings")
+	String mappings;
+
+	@Label("Cache")
+	String cache;
+
+	/**
+	 * Ends and commits this event.
+	 * @param namespace the mappings coordinate the jar was remapped from, or null for the source namespace
+	 * @param mappings the mappings the jar was remapped to
+	 * @param cache one of {@link #CACHE_LOCAL}, {@link #CACHE_REMOTE} and {@link #CACHE_MISS}
+	 */
+	public void finish(String jar, String namespace, String mappings, String cache, Path output) {
+		end();
+
+		if (shouldCommit()) {
+			this.jar = jar;
+			this.size = output.toFile().length();
+			this.classCount = countClasses(output);
+			this.namespace = namespace;
+			this.mappings = mappings;
+			this.cache = cache;
+			commit();
+		}
+	}
+}
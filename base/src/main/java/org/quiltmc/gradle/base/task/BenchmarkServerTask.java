@@ -0,0 +1,269 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.task;
+
+import com.grack.nanojson.JsonStringWriter;
+import com.grack.nanojson.JsonWriter;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+
+import javax.inject.Inject;
+import java.io.*;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Launches a dedicated server several times in a fresh directory, stops it as soon as it's ready, and reports how long
+ * it took to get there, the peak heap usage and the garbage collections along the way.
+ */
+public abstract class BenchmarkServerTask extends RunGameTask {
+	// [0.123s][info][gc] GC(3) Pause Young (Normal) (G1 Evacuation Pause) 24M->3M(256M) 2.345ms
+	private static final Pattern GC = Pattern.compile("Pause (Young|Full|Remark|Cleanup).* (\\d+)M->(\\d+)M\\((\\d+)M\\)");
+
+	private final List<Launch> launches = new ArrayList<>();
+
+	public BenchmarkServerTask() {
+		super();
+
+		setDescription("Measures how long a dedicated server takes to start.");
+		getLaunches().convention(5);
+		getTimeout().convention(300);
+		getReport().convention(getProject().getLayout().getBuildDirectory().file("reports/" + getName() + ".json"));
+	}
+
+	@Inject
+	protected abstract FileSystemOperations getFileSystemOperations();
+
+	@Internal
+	public abstract Property<Integer> getLaunches();
+
+	/**
+	 * Seconds to wait for a launch to be ready, and then to stop, before killing it and failing.
+	 */
+	@Internal
+	public abstract Property<Integer> getTimeout();
+
+	@Internal
+	public abstract RegularFileProperty getReport();
+
+	@Override
+	public void exec() {
+		if (getLaunches().get() < 1) {
+			throw new IllegalArgumentException("The server has to be launched at least once to benchmark it, launches is " + getLaunches().get());
+		}
+
+		File runDir = new File(getTemporaryDir(), "run");
+		File gcLog = new File(getTemporaryDir(), "gc.log");
+
+		// Once for every launch, which run the server directly so a hanging one can be killed
+		try {
+			prepareClasspath();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to prepare the game classpath", e);
+		}
+
+		List<String> command = new ArrayList<>();
+		command.add(getJavaExecutable());
+		command.addAll(getAllJvmArgs());
+		command.add("-Xlog:gc:file=" + gcLog.getAbsolutePath());
+		command.add(getMainClass().get());
+		command.addAll(getArgs());
+		command.add("nogui");
+
+		for (int i = 0; i < getLaunches().get(); i++) {
+			getFileSystemOperations().delete(spec -> spec.delete(runDir, gcLog));
+
+			try {
+				prepareRunDirectory(runDir);
+				launches.add(launch(command, runDir, gcLog));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to launch the server", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while benchmarking the server", e);
+			}
+
+			Launch launch = launches.get(launches.size() - 1);
+			getLogger().lifecycle("QuiltGradle: Launch {} was ready in {} ms, peak heap {} MB, {} GCs", i + 1, launch.timeToReady(), launch.peakHeap(), launch.youngGcs() + launch.fullGcs());
+		}
+
+		try {
+			writeReport();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write the benchmark report", e);
+		}
+	}
+
+	private String getJavaExecutable() {
+		if (getJavaLauncher().isPresent()) {
+			return getJavaLauncher().get().getExecutablePath().getAsFile().getAbsolutePath();
+		} else if (getExecutable() != null) {
+			return getExecutable();
+		}
+
+		return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+	}
+
+	private static void prepareRunDirectory(File runDir) throws IOException {
+		runDir.mkdirs();
+		Files.writeString(runDir.toPath().resolve("eula.txt"), "eula=true\n");
+
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		Files.writeString(runDir.toPath().resolve("server.properties"), "online-mode=false\nserver-port=" + port + "\n");
+	}
+
+	private Launch launch(List<String> command, File runDir, File gcLog) throws IOException, InterruptedException {
+		ProcessBuilder builder = new ProcessBuilder(command).directory(runDir).redirectErrorStream(true);
+		getEnvironment().forEach((key, value) -> builder.environment().put(key, String.valueOf(value)));
+
+		int timeout = getTimeout().get();
+		long start = System.nanoTime();
+		Process process = builder.start();
+		OutputReader output = new OutputReader(process.getInputStream());
+		output.start();
+
+		try {
+			// Also released when the server exits before getting there
+			if (!output.ready.await(timeout, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("The server didn't print its Done line within " + timeout + " seconds");
+			} else if (output.readyAt == 0) {
+				throw new IllegalStateException("The server exited before it was ready");
+			}
+
+			try (Writer console = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+				console.write("stop\n");
+			}
+
+			if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("The server didn't stop within " + timeout + " seconds");
+			} else if (process.exitValue() != 0) {
+				getLogger().warn("QuiltGradle: The server exited with code {}", process.exitValue());
+			}
+		} finally {
+			if (process.isAlive()) {
+				process.destroyForcibly().waitFor();
+			}
+
+			output.join();
+		}
+
+		return Launch.of((output.readyAt - start) / 1_000_000, gcLog.toPath());
+	}
+
+	private void writeReport() throws IOException {
+		List<Long> times = launches.stream().map(Launch::timeToReady).sorted().toList();
+
+		JsonStringWriter writer = JsonWriter.string().object()
+				.value("launches", launches.size())
+				.object("timeToReady")
+				.value("median", times.get(times.size() / 2))
+				.value("min", times.get(0))
+				.value("max", times.get(times.size() - 1))
+				.end()
+				.array("runs");
+
+		for (Launch launch : launches) {
+			writer.object()
+					.value("timeToReady", launch.timeToReady())
+					.value("peakHeap", launch.peakHeap())
+					.value("youngGcs", launch.youngGcs())
+					.value("fullGcs", launch.fullGcs())
+					.end();
+		}
+
+		Path report = getReport().get().getAsFile().toPath();
+		Files.createDirectories(report.getParent());
+		Files.writeString(report, writer.end().end().done());
+		getLogger().lifecycle("QuiltGradle: Median time to ready {} ms, report written to {}", times.get(times.size() / 2), report);
+	}
+
+	/**
+	 * @param timeToReady milliseconds between the launch and the Done line
+	 * @param peakHeap megabytes of heap in use before the largest collection
+	 */
+	private record Launch(long timeToReady, int peakHeap, int youngGcs, int fullGcs) {
+		private static Launch of(long timeToReady, Path gcLog) throws IOException {
+			int peakHeap = 0;
+			int youngGcs = 0;
+			int fullGcs = 0;
+
+			for (String line : Files.exists(gcLog) ? Files.readAllLines(gcLog) : List.<String>of()) {
+				Matcher matcher = GC.matcher(line);
+
+				if (matcher.find()) {
+					peakHeap = Math.max(peakHeap, Integer.parseInt(matcher.group(2)));
+
+					if (matcher.group(1).equals("Full")) {
+						fullGcs++;
+					} else if (matcher.group(1).equals("Young")) {
+						youngGcs++;
+					}
+				}
+			}
+
+			return new Launch(timeToReady, peakHeap, youngGcs, fullGcs);
+		}
+	}
+
+	/**
+	 * Logs the server's output and notes when it prints {@code Done (1.234s)! For help, type "help"}.
+	 */
+	private class OutputReader extends Thread {
+		private final CountDownLatch ready = new CountDownLatch(1);
+		private final InputStream in;
+		private volatile long readyAt;
+
+		private OutputReader(InputStream in) {
+			super("QuiltGradle server output");
+			this.in = in;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					getLogger().info(line);
+
+					if (readyAt == 0 && line.contains("Done (") && line.contains("For help")) {
+						readyAt = System.nanoTime();
+						ready.countDown();
+					}
+				}
+			} catch (IOException e) {
+				// The server was killed
+			} finally {
+				ready.countDown();
+			}
+		}
+	}
+}
@@ -20,10 +20,14 @@
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
-import org.jetbrains.java.decompiler.main.decompiler.ConsoleDecompiler;
+import org.gradle.workers.WorkerExecutor;
 import org.quiltmc.gradle.base.Constants;
+import org.quiltmc.gradle.base.worker.DecompileWorkAction;
+import org.quiltmc.gradle.base.worker.WorkQueues;
 
+import javax.inject.Inject;
 import java.io.File;
 
 public abstract class DecompileJarTask extends DefaultTask {
@@ -34,10 +38,23 @@ public DecompileJarTask() {
 	@InputFiles
 	public abstract Property<Configuration> getConfiguration();
 
+	@Internal
+	public abstract Property<Boolean> getWorkerProcess();
+
+	@Internal
+	public abstract Property<String> getWorkerHeap();
+
+	@Inject
+	public abstract WorkerExecutor getWorkerExecutor();
+
 	@TaskAction
 	public void execute() {
 		File jar = getConfiguration().get().getSingleFile();
 		File sources = new File(jar.getParentFile(), jar.getName().replaceFirst(".jar$", "-sources.jar"));
-		ConsoleDecompiler.main(new String[]{"-log=ERROR",  "-ind=\t", jar.getAbsolutePath(), sources.getAbsolutePath()});
+
+		WorkQueues.get(getWorkerExecutor(), getWorkerProcess().get(), getWorkerHeap().get()).submit(DecompileWorkAction.class, parameters -> {
+			parameters.getInput().set(jar);
+			parameters.getOutput().set(sources);
+		});
 	}
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.task;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+import org.quiltmc.gradle.base.Constants;
+import org.quiltmc.gradle.base.util.CacheArchive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs the global QuiltGradle cache into a single archive, to pre-warm CI images with.
+ * <p>
+ * Only the QuiltGradle cache is exported: game jars, mappings and remapped dependencies. Libraries and other
+ * dependencies resolved by Gradle itself live in Gradle's own caches and are not included, so builds importing the
+ * archive still need a repository to resolve those from, or a pre-warmed Gradle user home.
+ */
+public abstract class ExportCacheTask extends DefaultTask {
+	public ExportCacheTask() {
+		setGroup(Constants.TASK_GROUP);
+		getOutputs().upToDateWhen(task -> false);
+	}
+
+	@Internal
+	public abstract DirectoryProperty getCache();
+
+	@Input
+	@Option(option = "file", description = "The archive to export the cache to")
+	public abstract Property<String> getArchive();
+
+	@TaskAction
+	public void execute() throws IOException {
+		Path cache = getCache().get().getAsFile().toPath();
+		Path archive = getProject().file(getArchive().get()).toPath();
+
+		List<Path> files;
+		try (Stream<Path> stream = Files.walk(cache)) {
+			files = stream.filter(Files::isRegularFile).filter(path -> !path.getFileName().toString().endsWith(".tmp") && !path.getFileName().toString().equals(CacheArchive.MARKER)).sorted().toList();
+		}
+
+		Files.createDirectories(archive.toAbsolutePath().getParent());
+
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+			for (Path file : files) {
+				zip.putNextEntry(new ZipEntry(cache.relativize(file).toString().replace('\\', '/')));
+				Files.copy(file, zip);
+				zip.closeEntry();
+			}
+		}
+
+		getLogger().lifecycle("QuiltGradle: Exported " + files.size() + " cached files to " + archive);
+	}
+}
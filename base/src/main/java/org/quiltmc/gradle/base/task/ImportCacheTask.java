@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.task;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+import org.quiltmc.gradle.base.Constants;
+import org.quiltmc.gradle.base.util.CacheArchive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Unpacks an archive created by {@link ExportCacheTask} into the global QuiltGradle cache, keeping existing files.
+ * <p>
+ * This only helps later builds, since the caches are already looked up while configuring. To import before that, set
+ * the {@value Constants.Properties#IMPORT_CACHE} Gradle property to the archive instead.
+ */
+public abstract class ImportCacheTask extends DefaultTask {
+	public ImportCacheTask() {
+		setGroup(Constants.TASK_GROUP);
+		getOutputs().upToDateWhen(task -> false);
+	}
+
+	@Internal
+	public abstract DirectoryProperty getCache();
+
+	@Input
+	@Option(option = "file", description = "The archive to import the cache from")
+	public abstract Property<String> getArchive();
+
+	@TaskAction
+	public void execute() throws IOException {
+		Path cache = getCache().get().getAsFile().toPath();
+		int imported = CacheArchive.importInto(getProject().file(getArchive().get()).toPath(), cache);
+
+		getLogger().lifecycle("QuiltGradle: Imported " + imported + " files into " + cache);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.task;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.quiltmc.gradle.base.Constants;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves every configuration QuiltGradle uses, so all downloads and remapped dependencies end up in the caches.
+ * <p>
+ * Remapping itself already happens while configuring the project, this makes sure the libraries and anything else
+ * only resolved lazily are downloaded as well. Game jars that game sources keep in memory are left out, resolving them
+ * would write them to disk.
+ * <p>
+ * The dependency graphs are resolved one configuration after the other, since Gradle only allows that on its own
+ * threads. That only fetches metadata, the artifacts of all configurations are then downloaded in parallel.
+ */
+public abstract class PrefetchTask extends DefaultTask {
+	private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+	public PrefetchTask() {
+		setGroup(Constants.TASK_GROUP);
+		getOutputs().upToDateWhen(task -> false);
+	}
+
+	@Internal
+	public abstract ListProperty<Configuration> getConfigurations();
+
+	@TaskAction
+	public void execute() throws InterruptedException {
+		Set<ResolvedArtifact> artifacts = new LinkedHashSet<>();
+
+		for (Configuration conf : getConfigurations().get()) {
+			if (conf.isCanBeResolved()) {
+				artifacts.addAll(conf.getResolvedConfiguration().getResolvedArtifacts());
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+		try {
+			List<Future<?>> downloads = new ArrayList<>();
+			for (ResolvedArtifact artifact : artifacts) {
+				downloads.add(executor.submit(artifact::getFile));
+			}
+
+			for (Future<?> download : downloads) {
+				download.get();
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed to prefetch an artifact", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		getLogger().lifecycle("QuiltGradle: Prefetched " + artifacts.size() + " artifacts from " + getConfigurations().get().size() + " configurations");
+	}
+}
@@ -25,21 +25,41 @@
 import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.OutputFiles;
 import org.quiltmc.gradle.base.Constants;
+import org.quiltmc.gradle.base.api.RemoteCache;
+import org.quiltmc.gradle.base.jfr.RemapEvent;
+import org.quiltmc.gradle.base.util.ClassCache;
+import org.quiltmc.gradle.base.util.ClassHierarchyIndex;
+import org.quiltmc.gradle.base.util.MappingsDigest;
 import org.quiltmc.gradle.base.util.MappingsProvider;
+import org.quiltmc.gradle.base.util.MemoryScheduler;
 import org.quiltmc.gradle.base.util.ModMetadataHelper;
+import org.quiltmc.gradle.base.util.NestedJars;
 import org.quiltmc.gradle.base.util.Remapper;
+import org.quiltmc.gradle.base.util.StubGenerator;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class RemapDependencyTask extends DefaultTask {
+	private static final String STUBS_CLASSIFIER = "stubs";
+
+	private final Map<String, Path> uploads = new ConcurrentHashMap<>();
+
 	public RemapDependencyTask() {
 		setGroup(Constants.TASK_GROUP);
+		getStubs().convention(false);
 	}
 
 	@InputFiles
@@ -48,6 +68,30 @@ public RemapDependencyTask() {
 	@Input
 	public abstract Property<MappingsProvider> getMappingsProvider();
 
+	@Internal
+	public abstract Property<ClassHierarchyIndex> getHierarchyIndex();
+
+	@Input
+	public abstract Property<Integer> getCompression();
+
+	@Internal
+	public abstract Property<ClassCache> getClassCache();
+
+	@Internal
+	public abstract Property<RemoteCache> getRemoteCache();
+
+	@Internal
+	public abstract Property<MemoryScheduler> getScheduler();
+
+	@Internal
+	public abstract Property<NestedJars> getNestedJars();
+
+	/**
+	 * Whether to produce API stubs instead of full jars, for dependencies only needed to compile against.
+	 */
+	@Input
+	public abstract Property<Boolean> getStubs();
+
 	@OutputDirectory
 	public abstract DirectoryProperty getDirectory();
 
@@ -56,35 +100,208 @@ public Provider<Set<Dependency>> getOutputDependencies() {
 		return this.getProject().provider(() -> {
 			ResolvedConfiguration conf = getConfiguration().get().getResolvedConfiguration();
 			Set<Dependency> outputs = new HashSet<>();
-			Remapper remapper = new Remapper();
+			List<MemoryScheduler.Job> jobs = new ArrayList<>();
+			MemoryScheduler scheduler = getScheduler().get();
+			Remapper remapper = new Remapper(getCompression().get(), getClassCache().getOrNull());
 
 			for (ResolvedArtifact artifact : conf.getResolvedArtifacts()) {
 				ModuleVersionIdentifier dependency = artifact.getModuleVersion().getId();
+				File inputFile = artifact.getFile();
 
-				String group = dependency.getGroup().replace(".", "/");
-				String name = dependency.getName() + "-" + dependency.getVersion();
-				String version = getMappingsProvider().get().getMappingsName().replace(":", "_").replace("-", "_");
+				outputs.add(remap(dependency.getGroup(), dependency.getName(), dependency.getVersion(), () -> hashFile(inputFile), () -> remapper.digest(getMappings(getNamespace(inputFile))).fingerprint(), (outputFile, candidates) -> {
+					// Mappings and classpath involve resolving configurations, which has to happen on this thread
+					String namespace = getNamespace(inputFile);
+					MappingSet mappings = getMappings(namespace);
+					List<Path> classpath = getClasspath(namespace);
+					List<NestedJars.Nested> nested = getNestedJars().isPresent() && !getStubs().get() ? getNestedJars().get().read(inputFile.toPath(), getRemappedVersion()) : List.of();
+					Map<String, NestedJars.Target> nestedTargets = new HashMap<>();
 
-				File inputFile = artifact.getFile();
-				MappingSet mappings = getMappings(inputFile);
+					for (String nestedNamespace : NestedJars.getNamespaces(nested)) {
+						nestedTargets.put(nestedNamespace, new NestedJars.Target(getMappings(nestedNamespace), getClasspath(nestedNamespace)));
+					}
 
-				File outputFile = getDirectory().get().getAsFile().toPath().resolve(group).resolve(name).resolve(version).resolve(name + "-" + version + ".jar").toFile();
-				outputFile.getParentFile().mkdirs();
+					jobs.add(new MemoryScheduler.Job(inputFile.getName(), scheduler.estimate(inputFile.length(), mappings, nested), () -> {
+						RemapEvent event = new RemapEvent();
+						event.begin();
 
-				if (!outputFile.exists()) {
-					getLogger().lifecycle("Remapping dependency " + inputFile.getName());
-					remapper.remap(inputFile, outputFile, mappings, false);
-				}
+						if (getStubs().get()) {
+							getLogger().lifecycle("Remapping API stubs of dependency " + inputFile.getName());
+							remapStubs(remapper, inputFile, outputFile, mappings, classpath);
+						} else {
+							getLogger().lifecycle("Remapping dependency " + inputFile.getName());
+							Path previous = Remapper.findPrevious(candidates, classpath);
+
+							if (nested.isEmpty()) {
+								int remapped = remapper.remapIncremental(inputFile.toPath(), List.of(inputFile.toPath()), outputFile.toPath(), previous, mappings, classpath);
+								logPatched(inputFile.getName(), previous, remapped);
+							} else {
+								remapWithNested(remapper, inputFile, outputFile, previous, mappings, classpath, nested, nestedTargets);
+							}
+						}
 
-				String notation = dependency.getGroup() + ":" + name + ":" + version;
-				outputs.add(getProject().getDependencies().create(notation));
+						event.finish(inputFile.getName(), namespace, getRemappedVersion(), RemapEvent.CACHE_MISS, outputFile.toPath());
+						return null;
+					}));
+				}));
 			}
 
+			scheduler.run(jobs, getLogger());
+			uploadAll();
 			return outputs;
 		});
 	}
 
-	MappingSet getMappings(File jar) throws IOException, JsonParserException {
-		return getMappingsProvider().get().getSourceMappingsVia(ModMetadataHelper.getMappings(jar));
+	/**
+	 * Runs the given action if the remapped dependency doesn't exist yet in the output directory. The action is given
+	 * the earlier outputs for the same dependency with other mappings, to patch one of them instead of remapping fully.
+	 * The remote cache is consulted first, and gets the output on the next {@link #uploadAll()} if it missed.
+	 * @param inputHash computes a hash identifying the contents of the dependency
+	 * @param mappingsFingerprint computes the fingerprint of the mappings the dependency is remapped with
+	 * @return the remapped dependency
+	 */
+	Dependency remap(String group, String name, String version, Callable<String> inputHash, Callable<String> mappingsFingerprint, RemapAction action) throws Exception {
+		String remappedName = name + "-" + version;
+		String remappedVersion = getRemappedVersion();
+		String classifier = getStubs().get() ? "-" + STUBS_CLASSIFIER : "";
+
+		File outputFile = getDirectory().get().getAsFile().toPath().resolve(group.replace(".", "/")).resolve(remappedName).resolve(remappedVersion).resolve(remappedName + "-" + remappedVersion + classifier + ".jar").toFile();
+		outputFile.getParentFile().mkdirs();
+
+		// Misses are recorded by the action, once the remap actually runs
+		RemapEvent event = new RemapEvent();
+		event.begin();
+
+		if (!outputFile.exists()) {
+			RemoteCache remoteCache = getRemoteCache().getOrNull();
+			// Keyed on the mappings' content, since builds on other machines may name the same mappings differently
+			String key = remoteCache == null ? null : group + "/" + remappedName + "/" + mappingsFingerprint.call() + "/" + inputHash.call() + classifier + ".jar";
+
+			if (remoteCache == null || !remoteCache.load(key, outputFile.toPath())) {
+				action.remap(outputFile, findPrevious(outputFile.getParentFile().getParentFile(), remappedName));
+
+				if (remoteCache != null) {
+					uploads.put(key, outputFile.toPath());
+				}
+			} else {
+				event.finish(outputFile.getName(), null, remappedVersion, RemapEvent.CACHE_REMOTE, outputFile.toPath());
+			}
+		} else {
+			event.finish(outputFile.getName(), null, remappedVersion, RemapEvent.CACHE_LOCAL, outputFile.toPath());
+		}
+
+		String notation = group + ":" + remappedName + ":" + remappedVersion + (getStubs().get() ? ":" + STUBS_CLASSIFIER : "");
+		return getProject().getDependencies().create(notation);
+	}
+
+	String getRemappedVersion() {
+		return getMappingsProvider().get().getMappingsName().replace(":", "_").replace("-", "_");
+	}
+
+	/**
+	 * Remaps a dependency and the jars nested in it. The output only appears once everything is remapped, as it's
+	 * never remapped again once it exists.
+	 */
+	private void remapWithNested(Remapper remapper, File inputFile, File outputFile, Path previous, MappingSet mappings, List<Path> classpath, List<NestedJars.Nested> nested, Map<String, NestedJars.Target> nestedTargets) throws IOException {
+		Path output = outputFile.toPath();
+		Path temp = output.resolveSibling(output.getFileName() + ".nested.tmp");
+
+		try {
+			int remapped = remapper.remapIncremental(inputFile.toPath(), List.of(inputFile.toPath()), temp, previous, mappings, classpath);
+			logPatched(inputFile.getName(), previous, remapped);
+			getNestedJars().get().remapInto(temp, nested, remapper, getRemappedVersion(), nestedTargets, getScheduler().get());
+
+			// The recorded mappings go first, the jar appearing is what marks the output as complete
+			Files.move(MappingsDigest.getFile(temp), MappingsDigest.getFile(output), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+			Files.deleteIfExists(MappingsDigest.getFile(temp));
+		}
+	}
+
+	private static void remapStubs(Remapper remapper, File inputFile, File outputFile, MappingSet mappings, List<Path> classpath) throws IOException {
+		// Stubbing first leaves the remapper with a fraction of the classes to read
+		Path stubs = Files.createTempFile(outputFile.getParentFile().toPath(), inputFile.getName(), ".stubs.jar");
+
+		try {
+			StubGenerator.write(inputFile.toPath(), stubs);
+			remapper.remap(stubs, List.of(), outputFile.toPath(), mappings, classpath);
+		} finally {
+			Files.deleteIfExists(stubs);
+		}
+	}
+
+	/**
+	 * Uploads the outputs remapped since the last call to the remote cache.
+	 */
+	void uploadAll() throws IOException {
+		for (Map.Entry<String, Path> upload : uploads.entrySet()) {
+			if (Files.exists(upload.getValue())) {
+				getRemoteCache().get().store(upload.getKey(), upload.getValue());
+			}
+		}
+
+		uploads.clear();
+	}
+
+	static String hashFile(File file) throws IOException, NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+		try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * @return the earlier outputs with recorded mappings, newest first, see {@link Remapper#findPrevious}
+	 */
+	private static List<Path> findPrevious(File directory, String remappedName) {
+		File[] versions = directory.listFiles(File::isDirectory);
+		if (versions == null) {
+			return List.of();
+		}
+
+		List<File> previous = new ArrayList<>();
+
+		for (File version : versions) {
+			Path jar = version.toPath().resolve(remappedName + "-" + version.getName() + ".jar");
+			File jarFile = jar.toFile();
+
+			// Only outputs with recorded mappings can be patched
+			if (jarFile.isFile() && Files.exists(MappingsDigest.getFile(jar))) {
+				previous.add(jarFile);
+			}
+		}
+
+		previous.sort(Comparator.comparingLong(File::lastModified).reversed());
+		return previous.stream().map(File::toPath).toList();
+	}
+
+	void logPatched(String name, Path previous, int remapped) {
+		if (previous != null) {
+			getLogger().info("Remapped {} classes of {} from {}", remapped, name, previous.getFileName());
+		}
+	}
+
+	String getNamespace(File jar) throws IOException, JsonParserException {
+		return ModMetadataHelper.getMappings(jar);
+	}
+
+	MappingSet getMappings(String namespace) throws IOException {
+		return getMappingsProvider().get().getSourceMappingsVia(namespace);
+	}
+
+	List<Path> getClasspath(String namespace) throws IOException {
+		return getHierarchyIndex().get().getVia(namespace);
+	}
+
+	@FunctionalInterface
+	interface RemapAction {
+		/**
+		 * @param previous earlier outputs for other mappings, newest first
+		 */
+		void remap(File output, List<Path> previous) throws IOException, JsonParserException;
 	}
 }
@@ -17,13 +17,148 @@
 package org.quiltmc.gradle.base.task;
 
 import org.cadixdev.lorenz.MappingSet;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
+import org.quiltmc.gradle.base.api.GameJarSource;
+import org.quiltmc.gradle.base.jfr.RemapEvent;
+import org.quiltmc.gradle.base.util.JarWriter;
+import org.quiltmc.gradle.base.util.MappingsDigest;
+import org.quiltmc.gradle.base.util.MemoryScheduler;
+import org.quiltmc.gradle.base.util.Remapper;
+import org.quiltmc.gradle.base.util.SpeculativeWorkService;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 public abstract class RemapGameTask extends RemapDependencyTask {
+	private volatile Future<Void> pending;
+	private Set<Dependency> pendingOutputs;
+
+	@Internal
+	public abstract ListProperty<GameJarSource> getGameJarSources();
+
+	/**
+	 * The service to remap the game in the background with, if set. See {@link #awaitOutputs()}.
+	 */
+	@Internal
+	public abstract Property<SpeculativeWorkService> getSpeculativeWork();
+
 	@Override
-	MappingSet getMappings(File jar) throws IOException {
+	public Provider<Set<Dependency>> getOutputDependencies() {
+		return this.getProject().provider(() -> {
+			// Already remapping in the background, the output only appears once that finishes
+			if (pending != null) {
+				return pendingOutputs;
+			}
+
+			for (Dependency dependency : getConfiguration().get().getDependencies()) {
+				for (GameJarSource source : getGameJarSources().get()) {
+					if (source.provides(dependency)) {
+						// Game releases never change, so their coordinates identify them
+						Dependency remapped = remap(dependency.getGroup(), dependency.getName(), dependency.getVersion(), () -> dependency.getName() + "-" + dependency.getVersion(), () -> MappingsDigest.of(getMappings(null)).fingerprint(), (output, candidates) -> {
+							// Mappings and classpath involve resolving configurations, which has to happen on this thread
+							MappingSet mappings = getMappings(null);
+							List<Path> classpath = getClasspath(null);
+							Remapper remapper = new Remapper(getCompression().get());
+
+							if (getSpeculativeWork().isPresent()) {
+								// Uploads stay on this thread, they're sent once something awaits the remap
+								pending = getSpeculativeWork().get().submit(() -> {
+									remapFused(source, dependency, output, candidates, remapper, mappings, classpath);
+									return null;
+								});
+							} else {
+								remapFused(source, dependency, output, candidates, remapper, mappings, classpath);
+							}
+						});
+
+						if (pending == null) {
+							uploadAll();
+						} else {
+							pendingOutputs = Set.of(remapped);
+						}
+
+						return Set.of(remapped);
+					}
+				}
+			}
+
+			return super.getOutputDependencies().get();
+		});
+	}
+
+	/**
+	 * Waits for the game to be remapped if it's being remapped in the background, the remapped dependency only exists
+	 * once this returns.
+	 */
+	public void awaitOutputs() {
+		Future<Void> future = pending;
+
+		if (future != null) {
+			SpeculativeWorkService.await(future);
+
+			try {
+				uploadAll();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to upload the remapped game", e);
+			}
+		}
+	}
+
+	private void remapFused(GameJarSource source, Dependency dependency, File output, List<Path> candidates, Remapper remapper, MappingSet mappings, List<Path> classpath) throws IOException {
+		getLogger().lifecycle("Remapping game " + dependency.getName() + " " + dependency.getVersion());
+		Path previous = Remapper.findPrevious(candidates, classpath);
+		RemapEvent event = new RemapEvent();
+		event.begin();
+
+		// The classes only exist in memory, tiny-remapper needs them in a jar though, so store them uncompressed next to the output
+		Path classes = Files.createTempFile(output.getParentFile().toPath(), dependency.getName(), ".jar");
+
+		try {
+			List<Path> resources = new ArrayList<>();
+			resources.add(classes);
+
+			try (JarWriter writer = new JarWriter(classes, Deflater.NO_COMPRESSION)) {
+				resources.addAll(source.writeClasses(dependency, writer));
+				writer.finish();
+			}
+
+			// Shares the budget with mod remaps, the game being the largest it's likely to run on its own
+			MemoryScheduler scheduler = getScheduler().get();
+			int remapped = scheduler.run(scheduler.estimate(Files.size(classes), mappings), () ->
+					remapper.remapIncremental(classes, resources, output.toPath(), previous, mappings, classpath)
+			);
+			logPatched(dependency.getName(), previous, remapped);
+			event.finish(output.getName(), null, getRemappedVersion(), RemapEvent.CACHE_MISS, output.toPath());
+		} finally {
+			Files.deleteIfExists(classes);
+		}
+	}
+
+	@Override
+	String getNamespace(File jar) {
+		// The game is always in the source namespace of the merged mappings
+		return null;
+	}
+
+	@Override
+	MappingSet getMappings(String namespace) throws IOException {
 		return getMappingsProvider().get().getMergedMappings();
 	}
+
+	@Override
+	List<Path> getClasspath(String namespace) throws IOException {
+		return getHierarchyIndex().get().getLibraries();
+	}
 }
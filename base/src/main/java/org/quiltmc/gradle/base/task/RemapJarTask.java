@@ -21,12 +21,21 @@
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
 import org.quiltmc.gradle.base.Constants;
+import org.quiltmc.gradle.base.util.ClassHierarchyIndex;
 import org.quiltmc.gradle.base.util.MappingsProvider;
-import org.quiltmc.gradle.base.util.Remapper;
+import org.quiltmc.gradle.base.util.TinyMappingsWriter;
+import org.quiltmc.gradle.base.worker.RemapWorkAction;
+import org.quiltmc.gradle.base.worker.WorkQueues;
 
+import javax.inject.Inject;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
 public abstract class RemapJarTask extends DefaultTask {
 	public RemapJarTask() {
@@ -39,9 +48,41 @@ public RemapJarTask() {
 	@Input
 	public abstract Property<MappingsProvider> getMappingsProvider();
 
+	@Internal
+	public abstract Property<ClassHierarchyIndex> getHierarchyIndex();
+
+	@Input
+	public abstract Property<Integer> getCompression();
+
+	@Internal
+	public abstract Property<Boolean> getWorkerProcess();
+
+	@Internal
+	public abstract Property<String> getWorkerHeap();
+
+	@Inject
+	public abstract WorkerExecutor getWorkerExecutor();
+
 	@TaskAction
 	public void execute() throws IOException {
-		Remapper remapper = new Remapper();
-		remapper.remap(getJar().get().getAsFile(), getJar().get().getAsFile(), getMappingsProvider().get().getTargetMappings(), true);
+		MappingsProvider mappingsProvider = getMappingsProvider().get();
+
+		// Mapping sets can't be sent to a worker process, so hand them over as a file named after the mapping files they
+		// were composed from, they're only composed again once those change
+		File mappingsFile = new File(getTemporaryDir(), "mappings-" + mappingsProvider.getTargetMappingsKey() + ".tiny");
+		if (!mappingsFile.exists()) {
+			TinyMappingsWriter.write(mappingsProvider.getTargetMappings(), mappingsFile.toPath());
+		}
+
+		List<File> classpath = getHierarchyIndex().get().getNamed().stream().map(Path::toFile).toList();
+
+		WorkQueues.get(getWorkerExecutor(), getWorkerProcess().get(), getWorkerHeap().get()).submit(RemapWorkAction.class, parameters -> {
+			parameters.getInput().set(getJar());
+			parameters.getOutput().set(getJar());
+			parameters.getMappings().set(mappingsFile);
+			parameters.getClasspath().from(classpath);
+			parameters.getCompression().set(getCompression());
+			parameters.getCacheMappings().set(getWorkerProcess());
+		});
 	}
 }
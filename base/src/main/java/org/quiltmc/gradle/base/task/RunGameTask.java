@@ -16,10 +16,21 @@
 
 package org.quiltmc.gradle.base.task;
 
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.options.Option;
 import org.quiltmc.gradle.base.Constants;
+import org.quiltmc.gradle.base.util.HotSwapper;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class RunGameTask extends JavaExec {
 	public RunGameTask() {
@@ -28,6 +39,43 @@ public RunGameTask() {
 		setGroup(Constants.TASK_GROUP);
 		setWorkingDir(new File(getProject().getProjectDir(), Constants.Locations.RUN_DIRECTORY));
 		systemProperty("loader.development", "true");
+		getHotSwap().convention(false);
+	}
+
+	/**
+	 * Whether to reload classes changed in {@link #getHotSwapDirectories()} into the running game, for example by running
+	 * {@code gradle classes} or {@code gradle -t classes} next to it. Reloaded classes lose the transformations applied
+	 * when they were loaded, see {@link HotSwapper}.
+	 */
+	@Internal
+	@Option(option = "hot-swap", description = "Reloads recompiled classes into the running game.")
+	public abstract Property<Boolean> getHotSwap();
+
+	@Internal
+	public abstract ConfigurableFileCollection getHotSwapDirectories();
+
+	@Override
+	public void exec() {
+		try {
+			prepareClasspath();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to prepare the game classpath", e);
+		}
+
+		if (!getHotSwap().get()) {
+			super.exec();
+			return;
+		}
+
+		try (HotSwapper hotSwapper = new HotSwapper(getLogger(), getHotSwapDirectories().getFiles())) {
+			jvmArgs(hotSwapper.getAgentArgument());
+			hotSwapper.start();
+			getLogger().lifecycle("QuiltGradle: Hot swapping classes from {}", getHotSwapDirectories().getAsPath());
+
+			super.exec();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to watch classes for hot swap", e);
+		}
 	}
 
 	@Override
@@ -35,4 +83,31 @@ public void setWorkingDir(File dir) {
 		dir.mkdirs();
 		super.setWorkingDir(dir);
 	}
+
+	/**
+	 * Moves the classpath to an argument file, so the command line stays short.
+	 */
+	void prepareClasspath() throws IOException {
+		List<File> classpath = new ArrayList<>(getClasspath().getFiles());
+		if (classpath.isEmpty()) {
+			return;
+		}
+
+		StringBuilder joined = new StringBuilder();
+		for (File file : classpath) {
+			if (!joined.isEmpty()) {
+				joined.append(File.pathSeparatorChar);
+			}
+
+			joined.append(file.getAbsolutePath());
+		}
+
+		// Argument files treat backslashes as escapes inside quotes
+		Path argumentFile = getTemporaryDir().toPath().resolve("classpath.txt");
+		Files.writeString(argumentFile, "-cp\n\"" + joined.toString().replace("\\", "\\\\") + "\"\n");
+
+		setClasspath(getObjectFactory().fileCollection());
+		jvmArgs("@" + argumentFile.toAbsolutePath());
+		getLogger().info("QuiltGradle: Launching with {} classpath entries from {}", classpath.size(), argumentFile);
+	}
 }
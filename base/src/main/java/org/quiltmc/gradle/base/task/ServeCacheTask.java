@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.task;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+import org.quiltmc.gradle.base.Constants;
+import org.quiltmc.gradle.base.util.LocalCacheServer;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Serves a remote cache from a local directory until the build is cancelled, for trying out remote caching or sharing
+ * remapped jars on a local network.
+ */
+public abstract class ServeCacheTask extends DefaultTask {
+	public ServeCacheTask() {
+		setGroup(Constants.TASK_GROUP);
+		getOutputs().upToDateWhen(task -> false);
+		getPort().convention("8080");
+	}
+
+	@Internal
+	public abstract DirectoryProperty getDirectory();
+
+	@Input
+	@Option(option = "port", description = "The port to serve the cache on")
+	public abstract Property<String> getPort();
+
+	@TaskAction
+	public void execute() throws IOException, InterruptedException {
+		try (LocalCacheServer server = new LocalCacheServer(getDirectory().get().getAsFile().toPath(), Integer.parseInt(getPort().get()))) {
+			getLogger().lifecycle("QuiltGradle: Serving remote cache at " + server.getUri() + ", cancel the build to stop");
+			new CountDownLatch(1).await();
+		}
+	}
+}
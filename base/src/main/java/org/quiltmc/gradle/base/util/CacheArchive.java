@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports archives of the global QuiltGradle cache, as created by {@link org.quiltmc.gradle.base.task.ExportCacheTask}.
+ */
+public final class CacheArchive {
+	/**
+	 * Records which archive was last imported, so builds pointing at the same archive don't unpack it again
+	 */
+	public static final String MARKER = ".imported";
+
+	private CacheArchive() {
+	}
+
+	/**
+	 * Imports the archive unless it's unchanged since it was last imported into the cache.
+	 * @return the number of imported files, or -1 if the archive was skipped
+	 */
+	public static int importOnce(Path archive, Path cache) throws IOException {
+		Path marker = cache.resolve(MARKER);
+		String stamp = archive.toAbsolutePath() + "\n" + Files.size(archive) + "\n" + Files.getLastModifiedTime(archive).toMillis();
+
+		if (Files.exists(marker) && Files.readString(marker).equals(stamp)) {
+			return -1;
+		}
+
+		int imported = importInto(archive, cache);
+		Files.writeString(marker, stamp);
+		return imported;
+	}
+
+	/**
+	 * Unpacks the archive into the cache, keeping existing files.
+	 * @return the number of imported files
+	 */
+	public static int importInto(Path archive, Path cache) throws IOException {
+		cache = cache.toAbsolutePath().normalize();
+		int imported = 0;
+
+		try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				Path target = cache.resolve(entry.getName()).normalize();
+
+				if (!target.startsWith(cache)) {
+					throw new IOException("Archive entry " + entry.getName() + " is outside of the cache");
+				}
+
+				if (entry.isDirectory() || Files.exists(target)) {
+					continue;
+				}
+
+				// Write through a temporary file so a concurrent build never sees a partial file
+				Files.createDirectories(target.getParent());
+				Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+				Files.copy(zip, temp, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+				imported++;
+			}
+		}
+
+		return imported;
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Cache of remapped classes, shared by every jar remapped with the same mappings.
+ * <p>
+ * A remapped class depends on more than its own bytes, references to inherited members are resolved through the
+ * hierarchy of the referenced classes. Keys therefore also cover the signatures of every class the class refers to and
+ * their supertypes, whether they're in the same jar or on the classpath, so an entry is only reused if remapping the
+ * class again can't differ. Updating a library only invalidates the classes which actually refer to what changed.
+ * <p>
+ * Entries are touched when they're used at most once a day, and {@link #prune()} deletes the ones unused for a month.
+ */
+public class ClassCache {
+	private static final Duration MAX_AGE = Duration.ofDays(30);
+	private static final Duration TOUCH_INTERVAL = Duration.ofDays(1);
+	private static final String LAST_PRUNED = ".last-pruned";
+
+	private final Path directory;
+
+	public ClassCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Computes the cache keys of every class of a jar.
+	 * @param classes the classes of the jar by internal name
+	 * @param context identifies everything else the remapped classes depend on, such as the mappings
+	 * @param classpath the classpath the jar is remapped against, usually a {@link ClassHierarchyIndex}
+	 */
+	public Map<String, String> getKeys(Map<String, byte[]> classes, String context, List<Path> classpath) throws IOException {
+		Map<String, ClassInfo> infos = new HashMap<>();
+		classes.forEach((name, bytes) -> infos.put(name, ClassInfo.read(bytes)));
+
+		Map<String, String> keys = new HashMap<>();
+		List<ZipFile> zips = new ArrayList<>();
+
+		try {
+			for (Path jar : classpath) {
+				zips.add(new ZipFile(jar.toFile()));
+			}
+
+			// Classes of the jar itself come first, like they do for the remapper
+			Map<String, Optional<ClassInfo>> classpathInfos = new HashMap<>();
+			infos.forEach((name, info) -> classpathInfos.put(name, Optional.of(info)));
+
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				Set<String> dependencies = new TreeSet<>();
+				Deque<String> queue = new ArrayDeque<>(infos.get(entry.getKey()).references());
+
+				while (!queue.isEmpty()) {
+					String name = queue.poll();
+
+					if (dependencies.add(name)) {
+						findClass(name, zips, classpathInfos).ifPresent(info -> queue.addAll(info.supertypes()));
+					}
+				}
+
+				MessageDigest digest = sha1();
+				digest.update(context.getBytes(StandardCharsets.UTF_8));
+				digest.update(sha1().digest(entry.getValue()));
+				for (String dependency : dependencies) {
+					// Classes missing now may appear on the classpath later, which has to change the key as well
+					Optional<ClassInfo> info = classpathInfos.get(dependency);
+					digest.update(info.isPresent() ? info.get().signature() : (dependency + " missing\n").getBytes(StandardCharsets.UTF_8));
+				}
+
+				keys.put(entry.getKey(), toHex(digest.digest()));
+			}
+		} finally {
+			for (ZipFile zip : zips) {
+				zip.close();
+			}
+		}
+
+		return keys;
+	}
+
+	private static Optional<ClassInfo> findClass(String name, List<ZipFile> zips, Map<String, Optional<ClassInfo>> infos) throws IOException {
+		Optional<ClassInfo> info = infos.get(name);
+		if (info != null) {
+			return info;
+		}
+
+		info = Optional.empty();
+		for (ZipFile zip : zips) {
+			ZipEntry entry = zip.getEntry(name + ".class");
+
+			if (entry != null) {
+				try (InputStream in = zip.getInputStream(entry)) {
+					info = Optional.of(ClassInfo.read(in.readAllBytes()));
+				}
+
+				break;
+			}
+		}
+
+		infos.put(name, info);
+		return info;
+	}
+
+	/**
+	 * @return the remapped class stored under the given key, or null if there is none
+	 */
+	public byte[] get(String key) {
+		try {
+			Path path = getPath(key);
+			byte[] bytes = Files.readAllBytes(path);
+
+			// Marks the entry as used for pruning, only once in a while as this is a write on every hit otherwise
+			FileTime now = FileTime.from(Instant.now());
+			if (Files.getLastModifiedTime(path).toInstant().plus(TOUCH_INTERVAL).isBefore(now.toInstant())) {
+				Files.setLastModifiedTime(path, now);
+			}
+
+			return bytes;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public void put(String key, byte[] remapped) throws IOException {
+		Path path = getPath(key);
+
+		if (Files.notExists(path)) {
+			Files.createDirectories(path.getParent());
+			Path temp = Files.createTempFile(path.getParent(), key, ".tmp");
+
+			try {
+				Files.write(temp, remapped);
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * Deletes entries which haven't been used for a month. Only walks the cache once a day, later calls return right
+	 * away.
+	 */
+	public void prune() throws IOException {
+		Path marker = directory.resolve(LAST_PRUNED);
+		Instant now = Instant.now();
+
+		if (Files.exists(marker) && Files.getLastModifiedTime(marker).toInstant().plus(TOUCH_INTERVAL).isAfter(now)) {
+			return;
+		}
+
+		Files.createDirectories(directory);
+		Files.writeString(marker, now.toString());
+		Instant cutoff = now.minus(MAX_AGE);
+
+		try (Stream<Path> stream = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) stream::iterator) {
+				if (path.getFileName().toString().endsWith(".class") && Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	private Path getPath(String key) {
+		return directory.resolve(key.substring(0, 2)).resolve(key + ".class");
+	}
+
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String toHex(byte[] hash) {
+		return String.format("%0" + (hash.length * 2) + "x", new BigInteger(1, hash));
+	}
+
+	/**
+	 * @param references the classes referred to from the constant pool, including the class itself
+	 * @param supertypes the superclass and interfaces
+	 * @param signature hash of the parts of the class which affect the remapping of other classes
+	 */
+	private record ClassInfo(List<String> references, List<String> supertypes, byte[] signature) {
+		static ClassInfo read(byte[] bytes) {
+			ClassReader reader = new ClassReader(bytes);
+			char[] buffer = new char[reader.getMaxStringLength()];
+
+			List<String> references = new ArrayList<>();
+			for (int i = 1; i < reader.getItemCount(); i++) {
+				int offset = reader.getItem(i);
+
+				if (offset != 0 && reader.readByte(offset - 1) == 7) {
+					references.add(reader.readUTF8(offset, buffer));
+				}
+			}
+
+			List<String> supertypes = new ArrayList<>();
+			MessageDigest digest = sha1();
+
+			reader.accept(new ClassVisitor(Opcodes.ASM9) {
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					if (superName != null) {
+						supertypes.add(superName);
+					}
+
+					if (interfaces != null) {
+						supertypes.addAll(List.of(interfaces));
+					}
+
+					update(access, name, superName + " " + supertypes);
+				}
+
+				@Override
+				public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+					update(access, name, descriptor);
+					return null;
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					update(access, name, descriptor);
+					return null;
+				}
+
+				private void update(int access, String name, String descriptor) {
+					digest.update((access + " " + name + " " + descriptor + "\n").getBytes(StandardCharsets.UTF_8));
+				}
+			}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+			return new ClassInfo(references, supertypes, digest.digest());
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.gradle.api.artifacts.Configuration;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Persistent index of the class hierarchy of the game and its libraries, used as the classpath when remapping.
+ * <p>
+ * Classes are stored as skeletons which keep their supertypes, interfaces and member signatures but no code, so a remap
+ * job only has to read a fraction of the game jar to resolve inherited members. Indexes are built once per game jar,
+ * library set and namespace and are shared by every remap job using them.
+ * <p>
+ * A new index is written whenever the game or a library changes, so indexes are touched when they're used at most once a
+ * day, and {@link #prune()} deletes the ones unused for a month.
+ */
+public class ClassHierarchyIndex {
+	private static final Duration MAX_AGE = Duration.ofDays(30);
+	private static final Duration TOUCH_INTERVAL = Duration.ofDays(1);
+	private static final String LAST_PRUNED = ".last-pruned";
+
+	private final File directory;
+	private final MappingsProvider mappingsProvider;
+
+	private Configuration gameConf;
+	private final List<Configuration> librariesConfs = new ArrayList<>();
+
+	private final Map<String, Path> indexes = new ConcurrentHashMap<>();
+
+	public ClassHierarchyIndex(File directory, MappingsProvider mappingsProvider) {
+		this.directory = directory;
+		this.mappingsProvider = mappingsProvider;
+	}
+
+	/**
+	 * @param conf the configuration containing the game remapped to the named namespace
+	 */
+	public void setGameConf(Configuration conf) {
+		gameConf = conf;
+	}
+
+	public void addLibrariesConf(Configuration conf) {
+		librariesConfs.add(conf);
+	}
+
+	/**
+	 * @return the index of the game libraries, for remapping the game itself
+	 */
+	public List<Path> getLibraries() throws IOException {
+		Set<File> libraries = new TreeSet<>();
+		for (Configuration conf : librariesConfs) {
+			libraries.addAll(conf.resolve());
+		}
+
+		if (libraries.isEmpty()) {
+			return List.of();
+		}
+
+		return List.of(getIndex("libraries-" + hash(libraries), output -> writeSkeletons(libraries, output)));
+	}
+
+	/**
+	 * @return the index of the game and its libraries in the named namespace
+	 */
+	public List<Path> getNamed() throws IOException {
+		return getGame(null);
+	}
+
+	/**
+	 * @return the index of the game and its libraries in the namespace of the given intermediate mappings
+	 */
+	public List<Path> getVia(String coordinate) throws IOException {
+		return getGame(coordinate);
+	}
+
+	private List<Path> getGame(String coordinate) throws IOException {
+		List<Path> libraries = getLibraries();
+
+		if (gameConf == null || gameConf.getDependencies().isEmpty()) {
+			return libraries;
+		}
+
+		// Built from the remapped game rather than the original one, which doesn't have to exist on disk
+		Set<File> game = gameConf.resolve();
+		String name = "game-" + hash(game);
+		Path skeleton = getIndex(name, output -> writeSkeletons(game, output));
+
+		List<Path> classpath = new ArrayList<>(libraries);
+		if (coordinate == null) {
+			classpath.add(0, skeleton);
+		} else {
+			classpath.add(0, getIndex(name + "-" + coordinate.replace(":", "_"), output -> {
+				MappingSet mappings = mappingsProvider.getSourceMappingsVia(coordinate).reverse();
+				new Remapper(Deflater.NO_COMPRESSION).remap(skeleton.toFile(), output.toFile(), mappings, libraries, true);
+			}));
+		}
+
+		return classpath;
+	}
+
+	private Path getIndex(String name, IndexWriter writer) throws IOException {
+		try {
+			return indexes.computeIfAbsent(name, key -> {
+				Path path = directory.toPath().resolve(key + ".jar");
+
+				try {
+					if (Files.notExists(path)) {
+						Files.createDirectories(directory.toPath());
+						Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+						Files.delete(temp);
+
+						writer.write(temp);
+						Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					} else {
+						// Marks the index as used for pruning
+						FileTime now = FileTime.from(Instant.now());
+						if (Files.getLastModifiedTime(path).toInstant().plus(TOUCH_INTERVAL).isBefore(now.toInstant())) {
+							Files.setLastModifiedTime(path, now);
+						}
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+
+				return path;
+			});
+		} catch (UncheckedIOException e) {
+			throw new IOException("Failed to build class hierarchy index " + name, e.getCause());
+		}
+	}
+
+	/**
+	 * Deletes indexes which haven't been used for a month. Only lists the directory once a day, later calls return right
+	 * away.
+	 */
+	public void prune() throws IOException {
+		Path root = directory.toPath();
+		Path marker = root.resolve(LAST_PRUNED);
+		Instant now = Instant.now();
+
+		if (Files.exists(marker) && Files.getLastModifiedTime(marker).toInstant().plus(TOUCH_INTERVAL).isAfter(now)) {
+			return;
+		}
+
+		Files.createDirectories(root);
+		Files.writeString(marker, now.toString());
+		Instant cutoff = now.minus(MAX_AGE);
+
+		try (Stream<Path> stream = Files.list(root)) {
+			for (Path path : (Iterable<Path>) stream::iterator) {
+				if (path.getFileName().toString().endsWith(".jar") && Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+	}
+
+	private static void writeSkeletons(Set<File> jars, Path output) throws IOException {
+		Set<String> seen = new HashSet<>();
+
+		// Indexes are stored uncompressed, they're read far more often than they're written
+		try (JarWriter out = new JarWriter(output, Deflater.NO_COMPRESSION)) {
+			for (File jar : jars) {
+				try (ZipFile zip = new ZipFile(jar)) {
+					for (ZipEntry entry : Collections.list(zip.entries())) {
+						String name = entry.getName();
+
+						// Skip multi-release variants and module descriptors, only the base classes matter for the hierarchy
+						if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class") || !seen.add(name)) {
+							continue;
+						}
+
+						ClassReader reader = new ClassReader(zip.getInputStream(entry).readAllBytes());
+						ClassWriter writer = new ClassWriter(0);
+						reader.accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+						out.put(name, writer.toByteArray());
+					}
+				}
+			}
+
+			out.finish();
+		}
+	}
+
+	private static String hash(Set<File> files) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+			for (File file : files) {
+				digest.update((file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+
+			return String.format("%040x", new BigInteger(1, digest.digest())).substring(0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface IndexWriter {
+		void write(Path output) throws IOException;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps a directory in sync with the contents of a jar, only touching the files whose content changed.
+ * <p>
+ * The SHA-256 of every entry is recorded in a {@code .hashes} file next to the directory. Files whose hash is unchanged
+ * are left alone and keep their timestamps, so IDE indexers and class loaders watching the directory only see the
+ * classes that actually changed.
+ * <p>
+ * The path, size and modification time of the jar are recorded in a {@code .stamp} file, so a jar that wasn't rebuilt
+ * isn't even opened.
+ */
+public final class ExplodedJar {
+	private ExplodedJar() {
+	}
+
+	/**
+	 * @return the number of files written or deleted
+	 */
+	public static int sync(File jar, Path directory) throws IOException {
+		Path hashesFile = directory.resolveSibling(directory.getFileName() + ".hashes");
+		Path stampFile = directory.resolveSibling(directory.getFileName() + ".stamp");
+		String stamp = jar.getAbsolutePath() + "\t" + jar.length() + "\t" + jar.lastModified();
+
+		if (Files.isDirectory(directory) && Files.exists(stampFile) && stamp.equals(Files.readString(stampFile, StandardCharsets.UTF_8))) {
+			return 0;
+		}
+
+		Map<String, String> previous = readHashes(hashesFile);
+		Map<String, String> current = new TreeMap<>();
+		int changed = 0;
+
+		Files.createDirectories(directory);
+
+		try (ZipFile zip = new ZipFile(jar)) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (entry.isDirectory()) {
+					continue;
+				}
+
+				Path file = directory.resolve(entry.getName()).normalize();
+				if (!file.startsWith(directory)) {
+					throw new IOException("Entry " + entry.getName() + " is outside of the jar");
+				}
+
+				byte[] bytes;
+				try (InputStream in = zip.getInputStream(entry)) {
+					bytes = in.readAllBytes();
+				}
+
+				String hash = HexFormat.of().formatHex(sha256().digest(bytes));
+				current.put(entry.getName(), hash);
+
+				if (hash.equals(previous.get(entry.getName())) && Files.isRegularFile(file)) {
+					continue;
+				}
+
+				Files.createDirectories(file.getParent());
+				Files.write(file, bytes);
+				changed++;
+			}
+		}
+
+		// Remove whatever the jar doesn't have anymore, including files left over from before hashes were recorded
+		List<Path> stale;
+		try (Stream<Path> stream = Files.walk(directory)) {
+			stale = stream.filter(Files::isRegularFile)
+					.filter(file -> !current.containsKey(directory.relativize(file).toString().replace(File.separatorChar, '/')))
+					.toList();
+		}
+
+		for (Path file : stale) {
+			Files.delete(file);
+			changed++;
+		}
+
+		deleteEmptyDirectories(directory);
+		writeHashes(hashesFile, current);
+		writeAtomically(stampFile, stamp);
+		return changed;
+	}
+
+	/**
+	 * Deletes the exploded jars in the given directory, and their hashes, except for the given ones. Exploded jars are
+	 * expected at {@code <root>/<group>/<name>}.
+	 */
+	public static void retain(Path root, Set<Path> directories) throws IOException {
+		if (Files.notExists(root)) {
+			return;
+		}
+
+		List<Path> stale;
+		try (Stream<Path> stream = Files.walk(root, 2)) {
+			stale = stream.filter(path -> root.relativize(path).getNameCount() == 2 && Files.isDirectory(path))
+					.filter(path -> !directories.contains(path))
+					.toList();
+		}
+
+		for (Path directory : stale) {
+			deleteRecursively(directory);
+			Files.deleteIfExists(directory.resolveSibling(directory.getFileName() + ".hashes"));
+			Files.deleteIfExists(directory.resolveSibling(directory.getFileName() + ".stamp"));
+		}
+
+		deleteEmptyDirectories(root);
+	}
+
+	private static void deleteRecursively(Path directory) throws IOException {
+		try (Stream<Path> stream = Files.walk(directory)) {
+			for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	// Removes the package directories left behind by deleted classes, deepest first so parents empty out too
+	private static void deleteEmptyDirectories(Path root) throws IOException {
+		List<Path> directories;
+		try (Stream<Path> stream = Files.walk(root)) {
+			directories = stream.filter(Files::isDirectory).filter(path -> !path.equals(root)).sorted(Comparator.reverseOrder()).toList();
+		}
+
+		for (Path directory : directories) {
+			try (Stream<Path> children = Files.list(directory)) {
+				if (children.findAny().isEmpty()) {
+					Files.delete(directory);
+				}
+			}
+		}
+	}
+
+	private static Map<String, String> readHashes(Path file) throws IOException {
+		Map<String, String> hashes = new HashMap<>();
+
+		if (Files.exists(file)) {
+			for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				int separator = line.lastIndexOf('\t');
+				if (separator > 0) {
+					hashes.put(line.substring(0, separator), line.substring(separator + 1));
+				}
+			}
+		}
+
+		return hashes;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeHashes(Path file, Map<String, String> hashes) throws IOException {
+		StringBuilder contents = new StringBuilder();
+
+		for (Map.Entry<String, String> entry : hashes.entrySet()) {
+			contents.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+		}
+
+		writeAtomically(file, contents.toString());
+	}
+
+	private static void writeAtomically(Path file, String contents) throws IOException {
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+
+		try {
+			Files.writeString(temp, contents, StandardCharsets.UTF_8);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import com.sun.jdi.Bootstrap;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.VMDisconnectedException;
+import com.sun.jdi.VirtualMachine;
+import com.sun.jdi.connect.Connector;
+import com.sun.jdi.connect.IllegalConnectorArgumentsException;
+import com.sun.jdi.connect.ListeningConnector;
+import org.gradle.api.logging.Logger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches class directories and redefines the changed classes in a running game over JDWP. Only method bodies can be
+ * changed this way, the JVM refuses to add or remove members, in which case the game has to be restarted.
+ * <p>
+ * Classes are redefined with the compiled bytes, so any transformation applied when they were loaded, such as mixins
+ * targeting them or access wideners, is lost. Classes whose loaded members differ from the compiled ones, which most
+ * transformations cause, are skipped with a warning, but transformations that only change method bodies can't be
+ * told apart and are undone.
+ * <p>
+ * The game's JDWP agent connects to this rather than the other way around, so the port is held from before the game
+ * starts and can't be taken by anything else in the meantime.
+ */
+public class HotSwapper implements AutoCloseable {
+	// Compilers write classes one at a time, changes are collected until the directories stay quiet this long
+	private static final long QUIET_MILLIS = 200;
+
+	private final Logger logger;
+	private final ListeningConnector connector;
+	private final Map<String, Connector.Argument> arguments;
+	private final String address;
+	private final List<Path> directories;
+	private final Thread thread = new Thread(this::run, "QuiltGradle hot swap");
+	private final WatchService watcher;
+	private volatile VirtualMachine vm;
+	private volatile boolean closed;
+
+	/**
+	 * Starts listening for the game's JDWP agent on a free port.
+	 */
+	public HotSwapper(Logger logger, Collection<File> directories) throws IOException {
+		this.logger = logger;
+		this.directories = directories.stream().map(file -> file.toPath().toAbsolutePath()).toList();
+		this.thread.setDaemon(true);
+		this.watcher = FileSystems.getDefault().newWatchService();
+
+		this.connector = Bootstrap.virtualMachineManager().listeningConnectors().stream()
+				.filter(c -> c.name().equals("com.sun.jdi.SocketListen"))
+				.findFirst()
+				.orElseThrow(() -> new IllegalStateException("No JDWP socket connector available"));
+
+		this.arguments = connector.defaultArguments();
+		arguments.get("port").setValue("0");
+		if (arguments.containsKey("localAddress")) {
+			arguments.get("localAddress").setValue("127.0.0.1");
+		}
+
+		try {
+			this.address = connector.startListening(arguments);
+		} catch (IllegalConnectorArgumentsException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the JVM argument starting the JDWP agent, connecting to this
+	 */
+	public String getAgentArgument() {
+		return "-agentlib:jdwp=transport=dt_socket,server=n,suspend=n,address=" + address;
+	}
+
+	public void start() throws IOException {
+		for (Path directory : directories) {
+			if (Files.isDirectory(directory)) {
+				register(directory);
+			}
+		}
+
+		thread.start();
+	}
+
+	private void run() {
+		try {
+			vm = accept();
+
+			if (!vm.canRedefineClasses()) {
+				logger.warn("QuiltGradle: The game's JVM can't redefine classes, hot swap is disabled");
+				return;
+			}
+
+			while (!closed) {
+				Set<Path> changed = new HashSet<>();
+				collect(watcher.take(), changed);
+
+				WatchKey key;
+				while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					collect(key, changed);
+				}
+
+				reload(changed);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException | VMDisconnectedException e) {
+			// The game exited
+		} catch (IOException e) {
+			// Closing stops listening, which fails a pending accept
+			if (!closed) {
+				logger.warn("QuiltGradle: Hot swap stopped", e);
+			}
+		}
+	}
+
+	private VirtualMachine accept() throws IOException {
+		try {
+			return connector.accept(arguments);
+		} catch (IllegalConnectorArgumentsException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			stopListening();
+		}
+	}
+
+	private void stopListening() {
+		try {
+			connector.stopListening(arguments);
+		} catch (IOException | IllegalConnectorArgumentsException e) {
+			// Already stopped
+		}
+	}
+
+	private void register(Path root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path directory : paths.filter(Files::isDirectory).toList()) {
+				directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			}
+		}
+	}
+
+	private void collect(WatchKey key, Set<Path> changed) throws IOException {
+		Path directory = (Path) key.watchable();
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				continue;
+			}
+
+			Path path = directory.resolve((Path) event.context());
+
+			// Deleted classes are collected too, they may be written again before the directories go quiet
+			if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE && Files.isDirectory(path)) {
+				// New packages are watched too, classes written in them before this are missed
+				register(path);
+			} else if (path.toString().endsWith(".class")) {
+				changed.add(path);
+			}
+		}
+
+		key.reset();
+	}
+
+	private void reload(Set<Path> changed) throws IOException {
+		long start = System.nanoTime();
+		Map<ReferenceType, byte[]> definitions = new HashMap<>();
+
+		for (Path file : changed) {
+			String name = getClassName(file);
+
+			// Classes the game hasn't loaded yet will be loaded from the new file anyway
+			List<ReferenceType> types = name == null ? List.of() : vm.classesByName(name);
+			if (types.isEmpty()) {
+				continue;
+			}
+
+			if (Files.notExists(file)) {
+				logger.warn("QuiltGradle: {} was deleted but stays loaded, restart the game to remove it", name);
+				continue;
+			}
+
+			byte[] data = Files.readAllBytes(file);
+			Set<String> members;
+
+			try {
+				members = getMembers(data);
+			} catch (RuntimeException e) {
+				// Written again before the directories went quiet, the next change picks it up
+				logger.warn("QuiltGradle: Not reloading {}, its class file can't be read: {}", name, e.toString());
+				continue;
+			}
+
+			for (ReferenceType type : types) {
+				if (!type.isPrepared() || getMembers(type).equals(members)) {
+					definitions.put(type, data);
+				} else {
+					logger.warn("QuiltGradle: Not reloading {}, its members differ from the loaded class, which was transformed when loaded or changed in a way that can't be reloaded, restart the game to apply it", name);
+				}
+			}
+		}
+
+		if (definitions.isEmpty()) {
+			return;
+		}
+
+		try {
+			vm.redefineClasses(definitions);
+			logger.lifecycle("QuiltGradle: Reloaded {} classes in {} ms", definitions.size(), (System.nanoTime() - start) / 1_000_000);
+		} catch (UnsupportedOperationException | LinkageError e) {
+			logger.warn("QuiltGradle: Could not reload changed classes, restart the game to apply them: {}", e.toString());
+		}
+	}
+
+	private static Set<String> getMembers(ReferenceType type) {
+		Set<String> members = new HashSet<>();
+		type.fields().forEach(field -> members.add(field.name() + ":" + field.signature()));
+		type.methods().forEach(method -> members.add(method.name() + method.signature()));
+		return members;
+	}
+
+	private static Set<String> getMembers(byte[] data) {
+		Set<String> members = new HashSet<>();
+
+		new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9) {
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				members.add(name + ":" + descriptor);
+				return null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				members.add(name + descriptor);
+				return null;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return members;
+	}
+
+	private String getClassName(Path file) {
+		for (Path directory : directories) {
+			if (file.startsWith(directory)) {
+				String relative = directory.relativize(file).toString();
+				return relative.substring(0, relative.length() - ".class".length()).replace(File.separatorChar, '.');
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		thread.interrupt();
+		stopListening();
+
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			logger.warn("QuiltGradle: Failed to stop watching classes", e);
+		}
+
+		VirtualMachine vm = this.vm;
+		if (vm != null) {
+			try {
+				vm.dispose();
+			} catch (VMDisconnectedException e) {
+				// The game already exited
+			}
+		}
+	}
+}
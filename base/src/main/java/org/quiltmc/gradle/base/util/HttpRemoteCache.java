@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.quiltmc.gradle.base.api.RemoteCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+
+/**
+ * Remote cache over plain HTTP, storing every entry as {@code <url>/<key>} with its SHA-256 as {@code <url>/<key>.sha256}.
+ * Any server accepting GET and PUT works, such as a generic Maven repository or {@link LocalCacheServer}.
+ */
+public class HttpRemoteCache implements RemoteCache {
+	private static final Logger LOGGER = Logging.getLogger(HttpRemoteCache.class);
+
+	private final URI base;
+	private final boolean push;
+	private final HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(10))
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build();
+
+	// Stop asking once the remote turned out to be unreachable, every request would time out the same way
+	private volatile boolean available = true;
+
+	/**
+	 * @param push whether to upload jars which weren't found in the cache
+	 */
+	public HttpRemoteCache(URI base, boolean push) {
+		this.base = base.toString().endsWith("/") ? base : URI.create(base + "/");
+		this.push = push;
+	}
+
+	@Override
+	public boolean load(String key, Path target) throws IOException {
+		if (!available) {
+			return false;
+		}
+
+		try {
+			HttpResponse<String> checksum = client.send(get(key + ".sha256"), HttpResponse.BodyHandlers.ofString());
+			if (checksum.statusCode() != 200) {
+				return false;
+			}
+
+			HttpResponse<InputStream> response = client.send(get(key), HttpResponse.BodyHandlers.ofInputStream());
+			if (response.statusCode() != 200) {
+				response.body().close();
+				return false;
+			}
+
+			Files.createDirectories(target.toAbsolutePath().getParent());
+			Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+
+			try {
+				MessageDigest digest = sha256();
+				try (InputStream in = new DigestInputStream(response.body(), digest); OutputStream out = Files.newOutputStream(temp)) {
+					in.transferTo(out);
+				}
+
+				String expected = checksum.body().trim();
+				String actual = ClassCache.toHex(digest.digest());
+
+				if (!expected.equalsIgnoreCase(actual)) {
+					LOGGER.warn("Ignoring remote cache entry {}, its checksum {} doesn't match {}", key, actual, expected);
+					return false;
+				}
+
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				LOGGER.lifecycle("Downloaded {} from the remote cache", target.getFileName());
+				return true;
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			available = false;
+			LOGGER.warn("Remote cache {} is unavailable, remapping locally: {}", base, e.getMessage());
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading " + key, e);
+		}
+	}
+
+	@Override
+	public void store(String key, Path source) throws IOException {
+		if (!push || !available) {
+			return;
+		}
+
+		String checksum;
+		try (InputStream in = new DigestInputStream(Files.newInputStream(source), sha256())) {
+			in.transferTo(OutputStream.nullOutputStream());
+			checksum = ClassCache.toHex(((DigestInputStream) in).getMessageDigest().digest());
+		}
+
+		try {
+			// The checksum goes last, so readers never see an entry without its content
+			put(key, HttpRequest.BodyPublishers.ofFile(source));
+			put(key + ".sha256", HttpRequest.BodyPublishers.ofString(checksum, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			LOGGER.warn("Failed to upload {} to the remote cache: {}", source.getFileName(), e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while uploading " + key, e);
+		}
+	}
+
+	private HttpRequest get(String key) {
+		return HttpRequest.newBuilder(base.resolve(key)).GET().build();
+	}
+
+	private void put(String key, HttpRequest.BodyPublisher body) throws IOException, InterruptedException {
+		HttpResponse<Void> response = client.send(HttpRequest.newBuilder(base.resolve(key)).PUT(body).build(), HttpResponse.BodyHandlers.discarding());
+
+		if (response.statusCode() / 100 != 2) {
+			throw new IOException("Server responded with " + response.statusCode());
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes a jar from remapped classes and the non-class entries of another jar.
+ * <p>
+ * Non-class entries are copied verbatim from the input jar, using the compressed data, CRC and sizes from its central
+ * directory, so resources are never inflated and deflated again. Only entries passed as bytes are compressed, in
+ * parallel and with a configurable level. Entries are written in a fixed order and with a constant timestamp, so the
+ * same inputs always produce the same jar.
+ */
+public class JarWriter implements BiConsumer<String, byte[]>, Closeable {
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int UTF8_FLAG = 1 << 11;
+
+	// 1980-02-01 00:00:00, the same constant Gradle uses for reproducible archives
+	private static final int DOS_TIME = 0;
+	private static final int DOS_DATE = (2 << 5) | 1;
+
+	private final Path output;
+	private final int compression;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final List<FileChannel> inputs = new ArrayList<>();
+
+	public JarWriter(Path output) {
+		this(output, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param compression the deflate level for entries written from bytes, {@link Deflater#NO_COMPRESSION} stores them
+	 */
+	public JarWriter(Path output, int compression) {
+		this.output = output;
+		this.compression = compression;
+	}
+
+	/**
+	 * Queues every non-class entry of the given jar to be copied to the output without recompressing it. Signature files
+	 * are left out, they no longer match once the classes are remapped and would make verifying class loaders reject
+	 * the jar.
+	 */
+	public void addNonClassFiles(Path jar) throws IOException {
+		addEntries(jar, name -> !name.endsWith(".class") && !isSignature(name));
+	}
+
+	private static boolean isSignature(String name) {
+		if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) >= 0) {
+			return false;
+		}
+
+		return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+	}
+
+	/**
+	 * Queues the entries of the given jar matching the filter to be copied to the output without recompressing them.
+	 */
+	public void addEntries(Path jar, Predicate<String> filter) throws IOException {
+		FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ);
+		inputs.add(channel);
+
+		try {
+			for (Entry entry : readCentralDirectory(channel)) {
+				if (filter.test(entry.name())) {
+					entries.putIfAbsent(entry.name(), entry);
+				}
+			}
+		} catch (ZipException e) {
+			// Zip64 and other unusual archives fall back to being recompressed
+			try (ZipFile zip = new ZipFile(jar.toFile())) {
+				for (ZipEntry entry : Collections.list(zip.entries())) {
+					if (filter.test(entry.getName())) {
+						entries.putIfAbsent(entry.getName(), Entry.of(entry.getName(), zip.getInputStream(entry).readAllBytes()));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds an entry with the given uncompressed content, replacing any existing entry with the same name.
+	 */
+	public void put(String name, byte[] data) {
+		entries.put(name, Entry.of(name, data));
+	}
+
+	@Override
+	public void accept(String className, byte[] data) {
+		put(className + ".class", data);
+	}
+
+	/**
+	 * Writes the jar. Nothing is written to the output if this isn't called before closing.
+	 */
+	public void finish() throws IOException {
+		Path directory = output.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, output.getFileName().toString(), ".tmp");
+
+		try {
+			try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				write(out);
+			}
+
+			// Release the inputs first, the output may be replacing one of them
+			close();
+			Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private void write(FileChannel out) throws IOException {
+		List<String> names = new ArrayList<>(entries.keySet());
+		names.sort(JarWriter::compareNames);
+
+		if (names.size() >= 0xFFFF) {
+			throw new ZipException("Too many entries for " + output);
+		}
+
+		// Compress everything up front in parallel, writing stays sequential to keep the order stable
+		boolean store = compression == Deflater.NO_COMPRESSION;
+		Map<String, byte[]> compressed = new ConcurrentHashMap<>();
+
+		if (!store) {
+			entries.values().parallelStream()
+					.filter(entry -> entry.source() == null && entry.data().length > 0)
+					.forEach(entry -> compressed.put(entry.name(), deflate(entry.data(), compression)));
+		}
+
+		ByteArrayOutputStream central = new ByteArrayOutputStream();
+
+		for (String name : names) {
+			Entry entry = entries.get(name);
+			byte[] data = null;
+			long compressedSize = entry.compressedSize();
+			int method = entry.method();
+
+			if (entry.source() == null) {
+				data = compressed.get(name);
+
+				if (data == null) {
+					method = ZipEntry.STORED;
+					data = entry.data();
+				} else {
+					method = ZipEntry.DEFLATED;
+				}
+
+				compressedSize = data.length;
+			}
+
+			long offset = out.position();
+			if (offset > 0xFFFFFFFFL) {
+				throw new ZipException("Zip64 is required for " + output);
+			}
+
+			byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+			ByteBuffer local = header(30 + nameBytes.length);
+			local.putInt(LOCAL_HEADER);
+			local.putShort((short) 20);
+			local.putShort((short) UTF8_FLAG);
+			local.putShort((short) method);
+			local.putShort((short) DOS_TIME);
+			local.putShort((short) DOS_DATE);
+			local.putInt((int) entry.crc());
+			local.putInt((int) compressedSize);
+			local.putInt((int) entry.size());
+			local.putShort((short) nameBytes.length);
+			local.putShort((short) 0);
+			local.put(nameBytes);
+			writeFully(out, local.flip());
+
+			if (data != null) {
+				writeFully(out, ByteBuffer.wrap(data));
+			} else {
+				transferFully(entry.source(), entry.offset(), compressedSize, out);
+			}
+
+			ByteBuffer header = header(46 + nameBytes.length);
+			header.putInt(CENTRAL_HEADER);
+			header.putShort((short) 20);
+			header.putShort((short) 20);
+			header.putShort((short) UTF8_FLAG);
+			header.putShort((short) method);
+			header.putShort((short) DOS_TIME);
+			header.putShort((short) DOS_DATE);
+			header.putInt((int) entry.crc());
+			header.putInt((int) compressedSize);
+			header.putInt((int) entry.size());
+			header.putShort((short) nameBytes.length);
+			header.putShort((short) 0);
+			header.putShort((short) 0);
+			header.putShort((short) 0);
+			header.putShort((short) 0);
+			header.putInt(0);
+			header.putInt((int) offset);
+			header.put(nameBytes);
+			central.write(header.array());
+		}
+
+		long centralOffset = out.position();
+		writeFully(out, ByteBuffer.wrap(central.toByteArray()));
+
+		ByteBuffer end = header(22);
+		end.putInt(END_OF_CENTRAL_DIRECTORY);
+		end.putShort((short) 0);
+		end.putShort((short) 0);
+		end.putShort((short) names.size());
+		end.putShort((short) names.size());
+		end.putInt(central.size());
+		end.putInt((int) centralOffset);
+		end.putShort((short) 0);
+		writeFully(out, end.flip());
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException exception = null;
+
+		for (FileChannel input : inputs) {
+			try {
+				input.close();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+
+		inputs.clear();
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	private static List<Entry> readCentralDirectory(FileChannel channel) throws IOException {
+		long size = channel.size();
+		int tailSize = (int) Math.min(size, 0xFFFF + 22);
+		ByteBuffer tail = read(channel, size - tailSize, tailSize);
+
+		int end = -1;
+		for (int i = tailSize - 22; i >= 0; i--) {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+				end = i;
+				break;
+			}
+		}
+
+		if (end < 0) {
+			throw new ZipException("Missing end of central directory");
+		}
+
+		int count = Short.toUnsignedInt(tail.getShort(end + 10));
+		long centralSize = Integer.toUnsignedLong(tail.getInt(end + 12));
+		long centralOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+		if (count == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL) {
+			throw new ZipException("Zip64 archives are not supported");
+		}
+
+		ByteBuffer central = read(channel, centralOffset, (int) centralSize);
+		List<Entry> result = new ArrayList<>(count);
+		int position = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (central.getInt(position) != CENTRAL_HEADER) {
+				throw new ZipException("Invalid central directory header");
+			}
+
+			int flags = Short.toUnsignedInt(central.getShort(position + 8));
+			int nameLength = Short.toUnsignedInt(central.getShort(position + 28));
+			int extraLength = Short.toUnsignedInt(central.getShort(position + 30));
+			int commentLength = Short.toUnsignedInt(central.getShort(position + 32));
+			long localOffset = Integer.toUnsignedLong(central.getInt(position + 42));
+
+			if ((flags & 1) != 0) {
+				throw new ZipException("Encrypted entries are not supported");
+			}
+
+			byte[] name = new byte[nameLength];
+			central.get(position + 46, name);
+
+			// The local header may use different extra fields than the central directory
+			ByteBuffer local = read(channel, localOffset, 30);
+			if (local.getInt(0) != LOCAL_HEADER) {
+				throw new ZipException("Invalid local file header");
+			}
+
+			long dataOffset = localOffset + 30 + Short.toUnsignedInt(local.getShort(26)) + Short.toUnsignedInt(local.getShort(28));
+
+			result.add(new Entry(
+					new String(name, StandardCharsets.UTF_8),
+					Short.toUnsignedInt(central.getShort(position + 10)),
+					Integer.toUnsignedLong(central.getInt(position + 16)),
+					Integer.toUnsignedLong(central.getInt(position + 20)),
+					Integer.toUnsignedLong(central.getInt(position + 24)),
+					channel,
+					dataOffset,
+					null
+			));
+
+			position += 46 + nameLength + extraLength + commentLength;
+		}
+
+		return result;
+	}
+
+	private static int compareNames(String a, String b) {
+		// The manifest has to come first for JarInputStream to find it
+		boolean aManifest = isManifest(a);
+		boolean bManifest = isManifest(b);
+
+		if (aManifest != bManifest) {
+			return aManifest ? -1 : 1;
+		}
+
+		return a.compareTo(b);
+	}
+
+	private static boolean isManifest(String name) {
+		return name.equals("META-INF/") || name.equals("META-INF/MANIFEST.MF");
+	}
+
+	static byte[] deflate(byte[] data, int level) {
+		Deflater deflater = new Deflater(level, true);
+
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static ByteBuffer header(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+		ByteBuffer buffer = header(size);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new ZipException("Unexpected end of archive");
+			}
+		}
+
+		return buffer.flip();
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	private static void transferFully(FileChannel in, long position, long count, FileChannel out) throws IOException {
+		long transferred = 0;
+
+		while (transferred < count) {
+			long written = in.transferTo(position + transferred, count - transferred, out);
+			if (written <= 0) {
+				throw new ZipException("Unexpected end of archive");
+			}
+
+			transferred += written;
+		}
+	}
+
+	private record Entry(String name, int method, long crc, long compressedSize, long size, FileChannel source, long offset, byte[] data) {
+		static Entry of(String name, byte[] data) {
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			return new Entry(name, ZipEntry.DEFLATED, crc.getValue(), -1, data.length, null, 0, data);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ResolvedArtifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Remembers the modules a set of library coordinates resolved to, so later builds can depend on them directly instead
+ * of walking the whole dependency graph of every library again.
+ * <p>
+ * Snapshotted modules are added as non-transitive dependencies with the version they resolved to as a regular
+ * requirement, so they take part in conflict resolution like any other module. When something else in the build needs
+ * a newer version of a library it wins, the same as it would against the full dependency graph.
+ * <p>
+ * Snapshots are keyed by a hash of the coordinates, what they were provided for and the operating system, since the
+ * game picks natives by it. Until a snapshot exists the coordinates are added as they are, and the snapshot is taken
+ * once the configuration they were added to is resolved.
+ */
+public class LibrarySnapshot {
+	private final Project project;
+	private final Path directory;
+
+	public LibrarySnapshot(Project project, File directory) {
+		this.project = project;
+		this.directory = directory.toPath();
+	}
+
+	/**
+	 * Adds the given libraries and their dependencies to the configuration.
+	 * @param key identifies what the libraries are for, such as a game or loader version
+	 */
+	public void provide(String key, List<String> coordinates, Configuration configuration) {
+		Path snapshot = directory.resolve(hash(key, coordinates) + ".modules");
+		List<String> modules = read(snapshot);
+
+		if (modules != null) {
+			for (String module : modules) {
+				ExternalModuleDependency dependency = (ExternalModuleDependency) project.getDependencies().create(module);
+				dependency.setTransitive(false);
+				configuration.getDependencies().add(dependency);
+			}
+		} else {
+			for (String coordinate : coordinates) {
+				configuration.getDependencies().add(project.getDependencies().create(coordinate));
+			}
+
+			configuration.getIncoming().afterResolve(incoming -> {
+				if (Files.notExists(snapshot)) {
+					write(snapshot, configuration.getResolvedConfiguration().getResolvedArtifacts());
+				}
+			});
+		}
+	}
+
+	private static List<String> read(Path snapshot) {
+		if (Files.notExists(snapshot)) {
+			return null;
+		}
+
+		try {
+			return Files.readAllLines(snapshot, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void write(Path snapshot, Set<ResolvedArtifact> artifacts) {
+		Set<String> modules = new TreeSet<>();
+
+		for (ResolvedArtifact artifact : artifacts) {
+			ModuleVersionIdentifier id = artifact.getModuleVersion().getId();
+			String classifier = artifact.getClassifier() == null ? "" : ":" + artifact.getClassifier();
+			String extension = "jar".equals(artifact.getExtension()) ? "" : "@" + artifact.getExtension();
+
+			modules.add(id.getGroup() + ":" + id.getName() + ":" + id.getVersion() + classifier + extension);
+		}
+
+		try {
+			Files.createDirectories(snapshot.getParent());
+			Path temp = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+
+			try {
+				Files.write(temp, modules, StandardCharsets.UTF_8);
+				Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write library snapshot " + snapshot, e);
+		}
+	}
+
+	private static String hash(String key, List<String> coordinates) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update((key + "\n" + System.getProperty("os.name") + "\n" + System.getProperty("os.arch") + "\n").getBytes(StandardCharsets.UTF_8));
+
+			for (String coordinate : coordinates) {
+				digest.update((coordinate + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
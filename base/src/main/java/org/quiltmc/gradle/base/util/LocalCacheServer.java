@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal HTTP server storing remote cache entries in a directory, as a stand-in for a real cache server when testing
+ * or for sharing a cache on a local network.
+ */
+public class LocalCacheServer implements Closeable {
+	private final Path directory;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * Starts serving the directory, on a free port if the given one is 0.
+	 */
+	public LocalCacheServer(Path directory, int port) throws IOException {
+		this.directory = directory.toAbsolutePath().normalize();
+		Files.createDirectories(this.directory);
+
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public URI getUri() {
+		return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			Path file = directory.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+
+			if (!file.startsWith(directory) || file.equals(directory)) {
+				exchange.sendResponseHeaders(400, -1);
+				return;
+			}
+
+			switch (exchange.getRequestMethod()) {
+				case "GET" -> {
+					if (!Files.isRegularFile(file)) {
+						exchange.sendResponseHeaders(404, -1);
+						return;
+					}
+
+					exchange.sendResponseHeaders(200, Files.size(file));
+					try (OutputStream out = exchange.getResponseBody()) {
+						Files.copy(file, out);
+					}
+				}
+				case "PUT" -> {
+					Files.createDirectories(file.getParent());
+					Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+					try {
+						try (InputStream in = exchange.getRequestBody()) {
+							Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+						}
+
+						Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					} finally {
+						Files.deleteIfExists(temp);
+					}
+
+					exchange.sendResponseHeaders(201, -1);
+				}
+				default -> exchange.sendResponseHeaders(405, -1);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
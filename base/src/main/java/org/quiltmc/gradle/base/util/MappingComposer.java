@@ -0,0 +1,250 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Merges and reverses mapping sets in parallel, one top-level class per fork-join task.
+ * <p>
+ * Source sets are only ever read, class names are resolved through a flat index rather than Lorenz's lookups, which
+ * create missing inner class mappings on the fly. Each top-level class of the result is only written by the task that
+ * created it, only creating top-level classes themselves is synchronized.
+ */
+public class MappingComposer {
+	private final ForkJoinPool pool;
+
+	public MappingComposer() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public MappingComposer(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Swaps the namespaces of a mapping set. Member descriptors are translated to the new source namespace, parameter
+	 * names are dropped as the new target namespace doesn't have any.
+	 */
+	public MappingSet reverse(MappingSet mappings) {
+		Map<String, String> names = index(mappings);
+		MappingSet target = MappingSet.create();
+
+		forEachParallel(mappings.getTopLevelClassMappings(), classMapping -> {
+			TopLevelClassMapping reversed;
+			synchronized (target) {
+				reversed = target.createTopLevelClassMapping(classMapping.getFullDeobfuscatedName(), classMapping.getFullObfuscatedName());
+			}
+
+			reverseClass(classMapping, reversed, names);
+		});
+
+		return target;
+	}
+
+	private static void reverseClass(ClassMapping<?, ?> source, ClassMapping<?, ?> target, Map<String, String> names) {
+		for (FieldMapping field : source.getFieldMappings()) {
+			Optional<FieldType> type = field.getType();
+
+			if (type.isPresent()) {
+				target.createFieldMapping(new FieldSignature(field.getDeobfuscatedName(), FieldType.of(mapDescriptor(type.get().toString(), names))), field.getObfuscatedName());
+			} else {
+				target.createFieldMapping(field.getDeobfuscatedName(), field.getObfuscatedName());
+			}
+		}
+
+		for (MethodMapping method : source.getMethodMappings()) {
+			MethodSignature signature = new MethodSignature(method.getDeobfuscatedName(), MethodDescriptor.of(mapDescriptor(method.getObfuscatedDescriptor(), names)));
+			target.createMethodMapping(signature, method.getObfuscatedName());
+		}
+
+		for (InnerClassMapping innerClass : source.getInnerClassMappings()) {
+			reverseClass(innerClass, target.createInnerClassMapping(innerClass.getDeobfuscatedName(), innerClass.getObfuscatedName()), names);
+		}
+	}
+
+	/**
+	 * Chains two mapping sets, the target namespace of the left set being the source namespace of the right set.
+	 * <p>
+	 * Classes and members of the right set are matched by the target name of the left entry, or by its source name if
+	 * both sets share their source namespace. Names and parameter names of the right set take precedence. Entries
+	 * only present in the right set are left out, they have no name in the source namespace of the result.
+	 */
+	public MappingSet merge(MappingSet left, MappingSet right) {
+		Map<String, String> leftNames = index(left);
+		Map<String, ClassMapping<?, ?>> rightClasses = new ConcurrentHashMap<>();
+		forEachParallel(right.getTopLevelClassMappings(), classMapping -> flatten(classMapping, rightClasses));
+
+		MappingSet target = MappingSet.create();
+
+		forEachParallel(left.getTopLevelClassMappings(), classMapping -> {
+			ClassMapping<?, ?> match = findClass(classMapping, rightClasses);
+
+			TopLevelClassMapping merged;
+			synchronized (target) {
+				merged = target.createTopLevelClassMapping(classMapping.getFullObfuscatedName(), match != null ? match.getFullDeobfuscatedName() : classMapping.getFullDeobfuscatedName());
+			}
+
+			mergeClass(classMapping, match, merged, leftNames, rightClasses);
+		});
+
+		return target;
+	}
+
+	private static void mergeClass(ClassMapping<?, ?> left, ClassMapping<?, ?> right, ClassMapping<?, ?> target, Map<String, String> leftNames, Map<String, ClassMapping<?, ?>> rightClasses) {
+		Map<String, FieldMapping> rightFields = new HashMap<>();
+		Map<String, MethodMapping> rightMethods = new HashMap<>();
+
+		if (right != null) {
+			for (FieldMapping field : right.getFieldMappings()) {
+				rightFields.put(field.getObfuscatedName() + " " + field.getType().map(Object::toString).orElse(""), field);
+			}
+
+			for (MethodMapping method : right.getMethodMappings()) {
+				rightMethods.put(method.getObfuscatedName() + " " + method.getObfuscatedDescriptor(), method);
+			}
+		}
+
+		for (FieldMapping field : left.getFieldMappings()) {
+			String desc = field.getType().map(Object::toString).orElse("");
+			FieldMapping match = rightFields.get(field.getDeobfuscatedName() + " " + mapDescriptor(desc, leftNames));
+			if (match == null) {
+				match = rightFields.get(field.getObfuscatedName() + " " + desc);
+			}
+
+			String name = match != null ? match.getDeobfuscatedName() : field.getDeobfuscatedName();
+
+			if (field.getType().isPresent()) {
+				target.createFieldMapping(new FieldSignature(field.getObfuscatedName(), field.getType().get()), name);
+			} else {
+				target.createFieldMapping(field.getObfuscatedName(), name);
+			}
+		}
+
+		for (MethodMapping method : left.getMethodMappings()) {
+			String desc = method.getObfuscatedDescriptor();
+			MethodMapping match = rightMethods.get(method.getDeobfuscatedName() + " " + mapDescriptor(desc, leftNames));
+			if (match == null) {
+				match = rightMethods.get(method.getObfuscatedName() + " " + desc);
+			}
+
+			MethodMapping merged = target.createMethodMapping(method.getSignature(), match != null ? match.getDeobfuscatedName() : method.getDeobfuscatedName());
+
+			Map<Integer, String> parameters = new TreeMap<>();
+			for (MethodParameterMapping parameter : method.getParameterMappings()) {
+				parameters.put(parameter.getIndex(), parameter.getDeobfuscatedName());
+			}
+
+			if (match != null) {
+				for (MethodParameterMapping parameter : match.getParameterMappings()) {
+					parameters.put(parameter.getIndex(), parameter.getDeobfuscatedName());
+				}
+			}
+
+			parameters.forEach(merged::createParameterMapping);
+		}
+
+		for (InnerClassMapping innerClass : left.getInnerClassMappings()) {
+			ClassMapping<?, ?> match = findClass(innerClass, rightClasses);
+			String name = match != null ? simpleName(match.getFullDeobfuscatedName()) : innerClass.getDeobfuscatedName();
+
+			mergeClass(innerClass, match, target.createInnerClassMapping(innerClass.getObfuscatedName(), name), leftNames, rightClasses);
+		}
+	}
+
+	private static ClassMapping<?, ?> findClass(ClassMapping<?, ?> left, Map<String, ClassMapping<?, ?>> rightClasses) {
+		ClassMapping<?, ?> match = rightClasses.get(left.getFullDeobfuscatedName());
+		return match != null ? match : rightClasses.get(left.getFullObfuscatedName());
+	}
+
+	/**
+	 * @return the full source name to full target name of every class of the mapping set
+	 */
+	private Map<String, String> index(MappingSet mappings) {
+		Map<String, ClassMapping<?, ?>> classes = new ConcurrentHashMap<>();
+		forEachParallel(mappings.getTopLevelClassMappings(), classMapping -> flatten(classMapping, classes));
+
+		Map<String, String> names = new HashMap<>(classes.size());
+		classes.forEach((name, classMapping) -> names.put(name, classMapping.getFullDeobfuscatedName()));
+		return names;
+	}
+
+	private static void flatten(ClassMapping<?, ?> classMapping, Map<String, ClassMapping<?, ?>> classes) {
+		classes.put(classMapping.getFullObfuscatedName(), classMapping);
+
+		for (InnerClassMapping innerClass : classMapping.getInnerClassMappings()) {
+			flatten(innerClass, classes);
+		}
+	}
+
+	static String mapDescriptor(String descriptor, Map<String, String> names) {
+		StringBuilder result = new StringBuilder(descriptor.length());
+		int i = 0;
+
+		while (i < descriptor.length()) {
+			char c = descriptor.charAt(i);
+			result.append(c);
+			i++;
+
+			if (c == 'L') {
+				int end = descriptor.indexOf(';', i);
+				result.append(mapClass(descriptor.substring(i, end), names)).append(';');
+				i = end + 1;
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static String mapClass(String name, Map<String, String> names) {
+		String mapped = names.get(name);
+		if (mapped != null) {
+			return mapped;
+		}
+
+		// Unmapped inner classes still move along with their outer class
+		int separator = name.lastIndexOf('$');
+		while (separator > 0) {
+			mapped = names.get(name.substring(0, separator));
+			if (mapped != null) {
+				return mapped + name.substring(separator);
+			}
+
+			separator = name.lastIndexOf('$', separator - 1);
+		}
+
+		return name;
+	}
+
+	private static String simpleName(String name) {
+		return name.substring(name.lastIndexOf('$') + 1);
+	}
+
+	private <T> void forEachParallel(Collection<T> items, Consumer<T> action) {
+		pool.submit(() -> new ArrayList<>(items).parallelStream().forEach(action)).join();
+	}
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.*;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compact fingerprint of a mapping set, recording a hash of the mapping of every class and member.
+ * <p>
+ * Two digests can be compared to find which classes and members are mapped differently, which together with
+ * {@link Diff#findAffected(Path)} tells which classes of a jar have to be remapped again when the mappings change.
+ * <p>
+ * Stored digests also record a fingerprint of the classpath the jar was remapped against, as the output depends on the
+ * hierarchy of the game and libraries as well. Outputs remapped against another classpath can't be patched.
+ */
+public class MappingsDigest {
+	private static final int VERSION = 2;
+
+	// Obfuscated class name -> deobfuscated class name
+	private final Map<String, String> classes;
+	// Obfuscated class name -> "name desc" of each member -> hash of its mapping
+	private final Map<String, Map<String, Long>> members;
+	private volatile String fingerprint;
+
+	private MappingsDigest(Map<String, String> classes, Map<String, Map<String, Long>> members) {
+		this.classes = classes;
+		this.members = members;
+	}
+
+	public static MappingsDigest of(MappingSet mappings) {
+		Map<String, String> classes = new HashMap<>();
+		Map<String, Map<String, Long>> members = new HashMap<>();
+
+		for (TopLevelClassMapping classMapping : mappings.getTopLevelClassMappings()) {
+			collect(classMapping, classes, members);
+		}
+
+		return new MappingsDigest(classes, members);
+	}
+
+	private static void collect(ClassMapping<?, ?> classMapping, Map<String, String> classes, Map<String, Map<String, Long>> members) {
+		String className = classMapping.getFullObfuscatedName();
+		classes.put(className, classMapping.getFullDeobfuscatedName());
+
+		Map<String, Long> classMembers = new HashMap<>();
+
+		for (FieldMapping field : classMapping.getFieldMappings()) {
+			String desc = field.getType().map(Object::toString).orElse("");
+			classMembers.put(field.getObfuscatedName() + " " + desc, hash(field.getDeobfuscatedName()));
+		}
+
+		for (MethodMapping method : classMapping.getMethodMappings()) {
+			StringBuilder mapping = new StringBuilder(method.getDeobfuscatedName());
+			method.getParameterMappings().stream()
+					.sorted(Comparator.comparingInt(MethodParameterMapping::getIndex))
+					.forEach(parameter -> mapping.append(' ').append(parameter.getIndex()).append(':').append(parameter.getDeobfuscatedName()));
+
+			classMembers.put(method.getObfuscatedName() + " " + method.getObfuscatedDescriptor(), hash(mapping.toString()));
+		}
+
+		members.put(className, classMembers);
+
+		for (InnerClassMapping innerClass : classMapping.getInnerClassMappings()) {
+			collect(innerClass, classes, members);
+		}
+	}
+
+	/**
+	 * @return the digest stored next to the given jar, or null if there is none or it can't be read
+	 */
+	public static MappingsDigest read(Path jar) {
+		Path file = getFile(jar);
+
+		if (Files.notExists(file)) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			if (in.readInt() != VERSION) {
+				return null;
+			}
+
+			// Classpath fingerprint, see readClasspath
+			in.readUTF();
+
+			int classCount = in.readInt();
+			Map<String, String> classes = new HashMap<>(classCount);
+			Map<String, Map<String, Long>> members = new HashMap<>(classCount);
+
+			for (int i = 0; i < classCount; i++) {
+				String className = in.readUTF();
+				classes.put(className, in.readUTF());
+
+				int memberCount = in.readInt();
+				Map<String, Long> classMembers = new HashMap<>(memberCount);
+				for (int j = 0; j < memberCount; j++) {
+					classMembers.put(in.readUTF(), in.readLong());
+				}
+
+				members.put(className, classMembers);
+			}
+
+			return new MappingsDigest(classes, members);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the fingerprint of the classpath the given jar was remapped against, or null if there is none or it can't
+	 * be read
+	 */
+	public static String readClasspath(Path jar) {
+		Path file = getFile(jar);
+
+		if (Files.notExists(file)) {
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			return in.readInt() == VERSION ? in.readUTF() : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores this digest next to the given jar.
+	 * @param classpath the fingerprint of the classpath the jar was remapped against
+	 */
+	public void write(Path jar, String classpath) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(getFile(jar)))))) {
+			out.writeInt(VERSION);
+			out.writeUTF(classpath);
+			out.writeInt(classes.size());
+
+			for (Map.Entry<String, String> entry : classes.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue());
+
+				Map<String, Long> classMembers = members.get(entry.getKey());
+				out.writeInt(classMembers.size());
+				for (Map.Entry<String, Long> member : classMembers.entrySet()) {
+					out.writeUTF(member.getKey());
+					out.writeLong(member.getValue());
+				}
+			}
+		}
+	}
+
+	public static Path getFile(Path jar) {
+		return jar.resolveSibling(jar.getFileName() + ".mappings");
+	}
+
+	/**
+	 * @return the classes and members mapped differently between the given digest and this one
+	 */
+	public Diff diff(MappingsDigest previous) {
+		Set<String> changedClasses = new HashSet<>();
+		Set<String> changedMembers = new HashSet<>();
+
+		Set<String> classNames = new HashSet<>(classes.keySet());
+		classNames.addAll(previous.classes.keySet());
+
+		for (String className : classNames) {
+			if (!Objects.equals(classes.get(className), previous.classes.get(className))) {
+				changedClasses.add(className);
+			}
+
+			Map<String, Long> current = members.getOrDefault(className, Map.of());
+			Map<String, Long> old = previous.members.getOrDefault(className, Map.of());
+
+			Set<String> memberKeys = new HashSet<>(current.keySet());
+			memberKeys.addAll(old.keySet());
+
+			for (String member : memberKeys) {
+				if (!Objects.equals(current.get(member), old.get(member))) {
+					// Members are tracked without their owner, references may go through a subclass
+					changedMembers.add(member);
+					changedClasses.add(className);
+				}
+			}
+		}
+
+		return new Diff(changedClasses, changedMembers);
+	}
+
+	/**
+	 * @return a hash identifying these mappings as a whole
+	 */
+	public String fingerprint() {
+		String fingerprint = this.fingerprint;
+		if (fingerprint == null) {
+			fingerprint = computeFingerprint();
+			this.fingerprint = fingerprint;
+		}
+
+		return fingerprint;
+	}
+
+	private String computeFingerprint() {
+		long hash = 0xcbf29ce484222325L;
+
+		for (String className : new TreeSet<>(classes.keySet())) {
+			hash = 31 * hash + hash(className + " " + classes.get(className));
+
+			for (Map.Entry<String, Long> member : new TreeMap<>(members.get(className)).entrySet()) {
+				hash = 31 * hash + hash(member.getKey());
+				hash = 31 * hash + member.getValue();
+			}
+		}
+
+		return Long.toHexString(hash);
+	}
+
+	private static long hash(String str) {
+		// FNV-1a, stable across JVMs unlike String#hashCode being only 32 bits
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < str.length(); i++) {
+			hash ^= str.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+
+	public record Diff(Set<String> classes, Set<String> members) {
+		public boolean isEmpty() {
+			return classes.isEmpty() && members.isEmpty();
+		}
+
+		/**
+		 * Finds the classes of a jar whose remapped form may differ, either because they're changed themselves or because
+		 * they refer to a changed class or member. This errs on the side of including too many classes.
+		 * @return the internal names of the affected classes
+		 */
+		public Set<String> findAffected(Path jar) throws IOException {
+			Set<String> affected = new HashSet<>();
+
+			try (ZipFile zip = new ZipFile(jar.toFile())) {
+				for (ZipEntry entry : Collections.list(zip.entries())) {
+					if (!entry.getName().endsWith(".class")) {
+						continue;
+					}
+
+					ClassReader reader;
+					try (InputStream in = zip.getInputStream(entry)) {
+						reader = new ClassReader(in.readAllBytes());
+					}
+
+					if (isAffected(reader)) {
+						affected.add(reader.getClassName());
+					}
+				}
+			}
+
+			return affected;
+		}
+
+		private boolean isAffected(ClassReader reader) {
+			char[] buffer = new char[reader.getMaxStringLength()];
+
+			for (int i = 1; i < reader.getItemCount(); i++) {
+				int offset = reader.getItem(i);
+				if (offset == 0) {
+					// Second slot of a long or double
+					continue;
+				}
+
+				int tag = reader.readByte(offset - 1);
+
+				if (tag == 1 && referencesClass(readUtf8(reader, offset))) {
+					return true;
+				} else if (tag == 12 && members.contains(reader.readUTF8(offset, buffer) + " " + reader.readUTF8(offset + 2, buffer))) {
+					return true;
+				}
+			}
+
+			// Declarations aren't referenced through name and type entries, but overriding a changed method still counts
+			boolean[] declares = new boolean[1];
+			reader.accept(new ClassVisitor(Opcodes.ASM9) {
+				@Override
+				public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+					declares[0] |= members.contains(name + " " + descriptor);
+					return null;
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					declares[0] |= members.contains(name + " " + descriptor);
+					return null;
+				}
+			}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+			return declares[0];
+		}
+
+		private boolean referencesClass(String str) {
+			if (isChangedClass(str)) {
+				return true;
+			}
+
+			// Descriptors and signatures, class names are between 'L' and ';' or '<'
+			int start = str.indexOf('L');
+			while (start >= 0) {
+				int end = start + 1;
+				while (end < str.length() && str.charAt(end) != ';' && str.charAt(end) != '<') {
+					end++;
+				}
+
+				if (end < str.length() && isChangedClass(str.substring(start + 1, end))) {
+					return true;
+				}
+
+				start = str.indexOf('L', start + 1);
+			}
+
+			return false;
+		}
+
+		private boolean isChangedClass(String name) {
+			// Inner classes are renamed along with their outer classes
+			int end = name.length();
+			while (end > 0) {
+				if (classes.contains(name.substring(0, end))) {
+					return true;
+				}
+
+				end = name.lastIndexOf('$', end - 1);
+			}
+
+			return false;
+		}
+
+		// ASM only reads UTF8 entries through the entries referring to them, so decode the modified UTF-8 directly
+		private static String readUtf8(ClassReader reader, int offset) {
+			int length = reader.readUnsignedShort(offset);
+			byte[] bytes = new byte[length + 2];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = (byte) reader.readByte(offset + i);
+			}
+
+			try {
+				return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+			} catch (IOException e) {
+				return "";
+			}
+		}
+	}
+}
@@ -22,11 +22,17 @@
 import org.cadixdev.lorenz.MappingSet;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ResolvedArtifact;
+import org.quiltmc.gradle.base.jfr.ComposeMappingsEvent;
+import org.quiltmc.gradle.base.jfr.ReadMappingsEvent;
 
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -35,6 +41,9 @@
 public class MappingsProvider {
 	private static final byte[] ZIP_HEADER = new BigInteger("504B0304",16).toByteArray();
 	private static final byte[] TINY_HEADER = "tiny\t2\t0".getBytes();
+	private static final MappingComposer COMPOSER = new MappingComposer();
+
+	private final boolean parallel;
 
 	private Configuration mappingsConf;
 	private Configuration intermediatesConf;
@@ -44,6 +53,18 @@ public class MappingsProvider {
 	private MappingSet intermediateMappings = null;
 	private MappingSet mergedMappings = null;
 	private final Map<String, MappingSet> viaMappings = new HashMap<>();
+	private final Map<String, MappingSet> sourceMappingsVia = new HashMap<>();
+
+	public MappingsProvider() {
+		this(false);
+	}
+
+	/**
+	 * @param parallel whether to merge and reverse with {@link MappingComposer} rather than Lorenz
+	 */
+	public MappingsProvider(boolean parallel) {
+		this.parallel = parallel;
+	}
 
 	public void setMappingsConf(Configuration conf) {
 		mappingsConf = conf;
@@ -92,7 +113,7 @@ public MappingSet getMergedMappings() throws IOException {
 		if (mergedMappings != null) {
 			return mergedMappings;
 		} else if (sourceMappings != null && intermediateMappings != null) { // Merge lazily
-			mergedMappings = intermediateMappings.merge(sourceMappings);
+			mergedMappings = merge("intermediate+mappings", intermediateMappings, sourceMappings);
 			return mergedMappings;
 		} else if (sourceMappings != null) {
 			return sourceMappings;
@@ -112,7 +133,7 @@ public MappingSet getViaMappings(String coordinate) throws IOException {
 	public MappingSet getViaMappings(String coordinate, MappingSet baseMappings, boolean reverse) throws IOException {
 		loadViaMappings();
 
-		return reverse ? baseMappings.reverse().merge(getViaMappings(coordinate)) : baseMappings.merge(getViaMappings(coordinate));
+		return merge(coordinate, reverse ? reverse("base", baseMappings) : baseMappings, getViaMappings(coordinate));
 	}
 
 	public MappingSet getSourceMappingsVia(String coordinate) throws IOException {
@@ -123,7 +144,35 @@ public MappingSet getSourceMappingsVia(String coordinate) throws IOException {
 			throw new RuntimeException("Could not get mappings with intermediate " + coordinate + ", please make sure to specify a `via` dependency on it.");
 		}
 
-		return getViaMappings(coordinate).reverse().merge(getMergedMappings());
+		// Every dependency using the same intermediate shares these, so only merge them once
+		MappingSet mappings = sourceMappingsVia.get(coordinate);
+		if (mappings == null) {
+			mappings = merge(coordinate + "+mappings", reverse(coordinate, getViaMappings(coordinate)), getMergedMappings());
+			sourceMappingsVia.put(coordinate, mappings);
+		}
+
+		return mappings;
+	}
+
+	/**
+	 * @return a key identifying the {@linkplain #getTargetMappings() target mappings} by the files they are composed
+	 * from, without reading them
+	 */
+	public String getTargetMappingsKey() {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+			for (Configuration conf : Arrays.asList(mappingsConf, intermediatesConf)) {
+				if (conf != null) {
+					File file = conf.getSingleFile();
+					digest.update((file.getAbsolutePath() + "\n" + file.length() + "\n" + file.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+				}
+			}
+
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
 	}
 
 	public MappingSet getTargetMappings() throws IOException {
@@ -133,12 +182,44 @@ public MappingSet getTargetMappings() throws IOException {
 		if (intermediateMappings == null) {
 			return sourceMappings;
 		} else {
-			return intermediateMappings.reverse().merge(sourceMappings).reverse();
+			return reverse("target", merge("target", reverse("intermediate", intermediateMappings), sourceMappings));
 		}
 	}
 
-	private static MappingSet readMappings(File in) throws IOException {
-		return readMappings(new FileInputStream(in));
+	private MappingSet merge(String description, MappingSet left, MappingSet right) {
+		ComposeMappingsEvent event = new ComposeMappingsEvent();
+		event.begin();
+
+		MappingSet merged = parallel ? COMPOSER.merge(left, right) : left.merge(right);
+		event.finish("merge", description, merged);
+		return merged;
+	}
+
+	private MappingSet reverse(String description, MappingSet mappings) {
+		ComposeMappingsEvent event = new ComposeMappingsEvent();
+		event.begin();
+
+		MappingSet reversed = parallel ? COMPOSER.reverse(mappings) : mappings.reverse();
+		event.finish("reverse", description, reversed);
+		return reversed;
+	}
+
+	public static MappingSet readMappings(File in) throws IOException {
+		ReadMappingsEvent event = new ReadMappingsEvent();
+		event.begin();
+
+		if (in.getName().endsWith(".txt")) {
+			// ProGuard has no header to recognize it by
+			MappingSet mappings = ProGuardMappingsReader.read(in.toPath());
+			event.finish(in, mappings);
+			return mappings;
+		}
+
+		try (InputStream stream = new FileInputStream(in)) {
+			MappingSet mappings = readMappings(stream);
+			event.finish(in, mappings);
+			return mappings;
+		}
 	}
 
 	private static MappingSet readMappings(InputStream in) throws IOException {
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs remap jobs concurrently while keeping their estimated memory use under a budget shared by the whole build.
+ * <p>
+ * Jobs are admitted largest first as long as the estimates of all running jobs, from every source set and project,
+ * fit the budget, so small jobs are packed around the large ones. A job estimated above the whole budget only runs on
+ * its own.
+ */
+public abstract class MemoryScheduler implements BuildService<MemoryScheduler.Parameters>, AutoCloseable {
+	// A class tree takes several times the size of the compressed classes it was read from
+	private static final int JAR_EXPANSION = 6;
+	// Rough footprint of a single class or member mapping in a Lorenz mapping set
+	private static final int BYTES_PER_MAPPING = 256;
+
+	private final int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+	private final Map<MappingSet, Long> mappingSizes = Collections.synchronizedMap(new IdentityHashMap<>());
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "QuiltGradle remap");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Guarded by this
+	private long reserved;
+	private int running;
+
+	public interface Parameters extends BuildServiceParameters {
+		/**
+		 * The heap available to all jobs together, in bytes
+		 */
+		Property<Long> getBudget();
+	}
+
+	/**
+	 * Estimates the heap a remap of the given jar takes.
+	 */
+	public long estimate(long jarSize, MappingSet mappings) {
+		return jarSize * JAR_EXPANSION + (mappings == null ? 0 : mappingSizes.computeIfAbsent(mappings, MemoryScheduler::estimateMappings));
+	}
+
+	/**
+	 * Estimates the heap a remap of the given jar and the jars nested in it takes. Nested jars are held in memory for
+	 * the whole remap, and there's room for remapping the largest of them after the outer jar. Others only run
+	 * alongside it when they get a reservation of their own, see {@link #trySubmit(long, Work)}.
+	 */
+	public long estimate(long jarSize, MappingSet mappings, List<NestedJars.Nested> nested) {
+		long[] sizes = new long[2];
+		addNestedSizes(nested, sizes);
+
+		return estimate(jarSize, mappings) + sizes[0] + sizes[1] * JAR_EXPANSION;
+	}
+
+	// Sums up the held bytes into the first slot, and keeps the largest jar in the second
+	private static void addNestedSizes(List<NestedJars.Nested> nested, long[] sizes) {
+		for (NestedJars.Nested jar : nested) {
+			if (!jar.isCached()) {
+				sizes[0] += jar.data().length;
+				sizes[1] = Math.max(sizes[1], jar.data().length);
+			}
+
+			addNestedSizes(jar.children(), sizes);
+		}
+	}
+
+	private static long estimateMappings(MappingSet mappings) {
+		long count = 0;
+		Deque<ClassMapping<?, ?>> queue = new ArrayDeque<>();
+		for (TopLevelClassMapping classMapping : mappings.getTopLevelClassMappings()) {
+			queue.add(classMapping);
+		}
+
+		while (!queue.isEmpty()) {
+			ClassMapping<?, ?> classMapping = queue.poll();
+			count += 1 + classMapping.getFieldMappings().size() + classMapping.getMethodMappings().size();
+			queue.addAll(classMapping.getInnerClassMappings());
+		}
+
+		return count * BYTES_PER_MAPPING;
+	}
+
+	/**
+	 * Runs a single job on the calling thread, once it fits the budget.
+	 */
+	public <T> T run(long estimate, Work<T> work) throws IOException {
+		synchronized (this) {
+			try {
+				while (!tryReserve(estimate)) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for memory to remap in");
+			}
+		}
+
+		try {
+			return work.call();
+		} finally {
+			release(estimate);
+		}
+	}
+
+	/**
+	 * Starts a job on the scheduler's threads if it fits the budget right now, without waiting for room. Jobs that
+	 * already hold a reservation use this to spread out, since waiting for more could deadlock.
+	 * @return the running job, or null if it doesn't fit and has to run within the caller's own reservation
+	 */
+	public <T> Future<T> trySubmit(long estimate, Work<T> work) {
+		if (!tryReserve(estimate)) {
+			return null;
+		}
+
+		try {
+			return executor.submit(() -> {
+				try {
+					return work.call();
+				} finally {
+					release(estimate);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			release(estimate);
+			throw e;
+		}
+	}
+
+	public void run(List<Job> jobs, Logger logger) throws Exception {
+		if (jobs.isEmpty()) {
+			return;
+		}
+
+		List<Job> pending = new ArrayList<>(jobs);
+		pending.sort(Comparator.comparingLong(Job::estimate).reversed());
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		long[] peak = {memory.getHeapMemoryUsage().getUsed()};
+		long maxDelay = 0;
+		long totalDelay = 0;
+
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+		sampler.scheduleAtFixedRate(() -> {
+			synchronized (peak) {
+				peak[0] = Math.max(peak[0], memory.getHeapMemoryUsage().getUsed());
+			}
+		}, 0, 50, TimeUnit.MILLISECONDS);
+
+		CompletionService<Job> completion = new ExecutorCompletionService<>(executor);
+		List<Runnable> cancellations = new ArrayList<>();
+		long start = System.nanoTime();
+		int ownRunning = 0;
+
+		try {
+			while (!pending.isEmpty() || ownRunning > 0) {
+				synchronized (this) {
+					// Admit everything that fits, oversized jobs only when nothing else runs
+					Iterator<Job> iterator = pending.iterator();
+					while (iterator.hasNext()) {
+						Job job = iterator.next();
+
+						if (tryReserve(job.estimate())) {
+							iterator.remove();
+							ownRunning++;
+
+							long delay = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+							maxDelay = Math.max(maxDelay, delay);
+							totalDelay += delay;
+
+							// Whoever claims the job releases its reservation, either the job itself or its cancellation
+							AtomicBoolean claimed = new AtomicBoolean();
+							Future<Job> future = completion.submit(() -> {
+								if (claimed.compareAndSet(false, true)) {
+									try {
+										job.work().call();
+									} finally {
+										release(job.estimate());
+									}
+								}
+
+								return job;
+							});
+
+							cancellations.add(() -> {
+								if (claimed.compareAndSet(false, true)) {
+									release(job.estimate());
+								}
+
+								future.cancel(true);
+							});
+						}
+					}
+
+					// Other source sets hold the whole budget, wait for them to release some
+					if (ownRunning == 0) {
+						wait();
+						continue;
+					}
+				}
+
+				Future<Job> done = completion.take();
+				ownRunning--;
+
+				try {
+					done.get();
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception cause ? cause : e;
+				}
+			}
+		} finally {
+			// Only does anything if a job failed, the others are complete otherwise
+			cancellations.forEach(Runnable::run);
+
+			sampler.shutdownNow();
+		}
+
+		logger.lifecycle("QuiltGradle: Ran {} remap jobs in {} ms, peak heap {} MB of a {} MB budget, queued {} ms on average and {} ms at most",
+				jobs.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), peak[0] >> 20, getBudget() >> 20, totalDelay / jobs.size(), maxDelay);
+	}
+
+	private long getBudget() {
+		return getParameters().getBudget().get();
+	}
+
+	private synchronized boolean tryReserve(long estimate) {
+		if (running == 0 || (running < threads && reserved + estimate <= getBudget())) {
+			reserved += estimate;
+			running++;
+			return true;
+		}
+
+		return false;
+	}
+
+	private synchronized void release(long estimate) {
+		reserved -= estimate;
+		running--;
+		notifyAll();
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	@FunctionalInterface
+	public interface Work<T> {
+		T call() throws IOException;
+	}
+
+	/**
+	 * @param estimate the heap the job is expected to take, in bytes, see {@link #estimate(long, MappingSet)}
+	 */
+	public record Job(String name, long estimate, Callable<Void> work) {
+	}
+}
@@ -20,31 +20,60 @@
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 public class ModMetadataHelper {
+	private static final String QUILT_MOD_JSON = "quilt.mod.json";
+	private static final String FABRIC_MOD_JSON = "fabric.mod.json";
+
 	// TODO: Temporary until we do full metadata parsing
 	public static String getMappings(File jar) throws IOException, JsonParserException {
-		FileSystem jarFs = FileSystems.newFileSystem(jar.toPath());
+		try (ZipFile zip = new ZipFile(jar)) {
+			ZipEntry quiltModJson = zip.getEntry(QUILT_MOD_JSON);
+
+			if (quiltModJson != null) {
+				try (InputStream in = zip.getInputStream(quiltModJson)) {
+					return getQuiltMappings(in);
+				}
+			}
+
+			return zip.getEntry(FABRIC_MOD_JSON) != null ? "net.fabricmc:intermediary" : null;
+		}
+	}
 
-		if (Files.exists(jarFs.getPath("quilt.mod.json"))) {
-			BufferedReader reader = Files.newBufferedReader(jarFs.getPath("quilt.mod.json"));
-			JsonObject loader = JsonParser.object().from(reader).getObject("quilt_loader");
+	/**
+	 * Same as {@link #getMappings(File)}, for a jar held in memory such as a nested jar.
+	 */
+	public static String getMappings(byte[] jar) throws IOException, JsonParserException {
+		boolean fabric = false;
 
-			if (!loader.containsKey("intermediate_mappings") || !loader.isString("intermediate_mappings")) {
-				return "org.quiltmc:hashed";
-			} else {
-				return loader.getString("intermediate_mappings");
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(jar))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				if (entry.getName().equals(QUILT_MOD_JSON)) {
+					return getQuiltMappings(zip);
+				} else if (entry.getName().equals(FABRIC_MOD_JSON)) {
+					fabric = true;
+				}
 			}
-		} else if (Files.exists(jarFs.getPath("fabric.mod.json"))) {
-			return "net.fabricmc:intermediary";
+		}
+
+		return fabric ? "net.fabricmc:intermediary" : null;
+	}
+
+	private static String getQuiltMappings(InputStream in) throws JsonParserException {
+		JsonObject loader = JsonParser.object().from(in).getObject("quilt_loader");
+
+		if (!loader.containsKey("intermediate_mappings") || !loader.isString("intermediate_mappings")) {
+			return "org.quiltmc:hashed";
 		} else {
-			return null;
+			return loader.getString("intermediate_mappings");
 		}
 	}
 }
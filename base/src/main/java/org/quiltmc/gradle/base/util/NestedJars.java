@@ -0,0 +1,295 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import com.grack.nanojson.JsonParserException;
+import org.cadixdev.lorenz.MappingSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Remaps the jars nested in mods under {@code META-INF/jars}, which are otherwise copied as-is by the {@link Remapper}.
+ * <p>
+ * Nested jars are hashed, and those not remapped yet are read into memory along with their mappings namespace. Each one
+ * is remapped on its own, in parallel where the {@link MemoryScheduler} has room for it and otherwise within the memory
+ * reserved for the jar they're nested in. The results are cached by content hash, so a module shared between several
+ * mods is only remapped once per mappings version.
+ * <p>
+ * Tiny remapper only reads jars from files, so each nested jar that is actually remapped is written to a temporary file
+ * next to its output for the duration of its remap.
+ */
+public class NestedJars {
+	public static final String DIRECTORY = "META-INF/jars/";
+
+	private final Path cache;
+	private final Map<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+	public NestedJars(Path cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Reads the jars nested in the given jar, and the ones nested in them. Jars already remapped with the given mappings
+	 * are only hashed, their content isn't kept or parsed.
+	 * @param mappingsName identifies the target mappings in the cache
+	 */
+	public List<Nested> read(Path jar, String mappingsName) throws IOException, JsonParserException {
+		List<Nested> nested = new ArrayList<>();
+
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (isNestedJar(entry.getName())) {
+					try (InputStream in = zip.getInputStream(entry)) {
+						nested.add(of(entry.getName(), in.readAllBytes(), mappingsName));
+					}
+				}
+			}
+		}
+
+		return nested;
+	}
+
+	private List<Nested> read(byte[] jar, String mappingsName) throws IOException, JsonParserException {
+		List<Nested> nested = new ArrayList<>();
+
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(jar))) {
+			ZipEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				if (isNestedJar(entry.getName())) {
+					nested.add(of(entry.getName(), zip.readAllBytes(), mappingsName));
+				}
+			}
+		}
+
+		return nested;
+	}
+
+	private Nested of(String name, byte[] data, String mappingsName) throws IOException, JsonParserException {
+		String hash = hash(data);
+
+		if (Files.exists(getOutput(mappingsName, hash))) {
+			return new Nested(name, null, hash, null, List.of());
+		}
+
+		return new Nested(name, data, hash, ModMetadataHelper.getMappings(data), read(data, mappingsName));
+	}
+
+	private Path getOutput(String mappingsName, String hash) {
+		return cache.resolve(mappingsName).resolve(hash + ".jar");
+	}
+
+	private static String hash(byte[] data) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isNestedJar(String name) {
+		return name.startsWith(DIRECTORY) && name.endsWith(".jar");
+	}
+
+	/**
+	 * @return the mappings namespaces of the given nested jars and their own nested jars
+	 */
+	public static Set<String> getNamespaces(List<Nested> nested) {
+		Set<String> namespaces = new HashSet<>();
+
+		for (Nested jar : nested) {
+			if (jar.namespace() != null) {
+				namespaces.add(jar.namespace());
+			}
+
+			namespaces.addAll(getNamespaces(jar.children()));
+		}
+
+		return namespaces;
+	}
+
+	/**
+	 * Replaces the given nested jars of a remapped jar with their remapped form. Nested jars without mod metadata are
+	 * libraries the loader doesn't remap either, and are kept as they are.
+	 * @param mappingsName identifies the target mappings in the cache
+	 * @param targets the mappings and classpath to remap each namespace with
+	 * @param scheduler runs nested jars in parallel when they fit its budget
+	 */
+	public void remapInto(Path jar, List<Nested> nested, Remapper remapper, String mappingsName, Map<String, Target> targets, MemoryScheduler scheduler) throws IOException {
+		Map<String, Path> remapped = new LinkedHashMap<>();
+		Map<String, Future<Path>> running = new LinkedHashMap<>();
+		IOException failure = null;
+
+		// Nested jars that don't fit the budget right now run here, the outer reservation has room for the largest one
+		for (Nested child : nested) {
+			Target target = child.namespace() == null ? null : targets.get(child.namespace());
+			Future<Path> future = child.isCached() || target == null ? null : scheduler.trySubmit(scheduler.estimate(child.data().length, target.mappings(), child.children()),
+					() -> remapChecked(child, remapper, mappingsName, targets, scheduler));
+
+			if (future != null) {
+				running.put(child.name(), future);
+				continue;
+			}
+
+			try {
+				Path result = remapChecked(child, remapper, mappingsName, targets, scheduler);
+				if (result != null) {
+					remapped.put(child.name(), result);
+				}
+			} catch (IOException e) {
+				failure = e;
+				break;
+			}
+		}
+
+		// Wait for everything started even after a failure, so no job is still writing to the cache afterwards
+		for (Map.Entry<String, Future<Path>> entry : running.entrySet()) {
+			try {
+				Path result = entry.getValue().get();
+				if (result != null) {
+					remapped.put(entry.getKey(), result);
+				}
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof IOException cause ? cause : new IOException("Failed to remap nested jar " + entry.getKey(), e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while remapping nested jars");
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		if (remapped.isEmpty()) {
+			return;
+		}
+
+		try (JarWriter writer = new JarWriter(jar, remapper.getCompression())) {
+			writer.addEntries(jar, name -> !remapped.containsKey(name));
+
+			for (Map.Entry<String, Path> entry : remapped.entrySet()) {
+				writer.put(entry.getKey(), Files.readAllBytes(entry.getValue()));
+			}
+
+			writer.finish();
+		}
+	}
+
+	private Path remapChecked(Nested nested, Remapper remapper, String mappingsName, Map<String, Target> targets, MemoryScheduler scheduler) throws IOException {
+		try {
+			return remap(nested, remapper, mappingsName, targets, scheduler);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Path remap(Nested nested, Remapper remapper, String mappingsName, Map<String, Target> targets, MemoryScheduler scheduler) {
+		Path output = getOutput(mappingsName, nested.hash());
+		if (Files.exists(output)) {
+			return output;
+		} else if (nested.isCached()) {
+			throw new UncheckedIOException(new IOException("Remapped nested jar " + nested.name() + " disappeared from " + output));
+		}
+
+		Target target = nested.namespace() == null ? null : targets.get(nested.namespace());
+		if (target == null) {
+			return null;
+		}
+
+		// Another dependency may be remapping the same module right now
+		CompletableFuture<Path> future = new CompletableFuture<>();
+		CompletableFuture<Path> existing = inFlight.putIfAbsent(output, future);
+
+		if (existing != null) {
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw new UncheckedIOException(new IOException("Failed to remap nested jar " + nested.name(), e.getCause()));
+			}
+		}
+
+		try {
+			remapUncached(nested, remapper, mappingsName, targets, target, output, scheduler);
+			future.complete(output);
+			return output;
+		} catch (IOException e) {
+			future.completeExceptionally(e);
+			throw new UncheckedIOException("Failed to remap nested jar " + nested.name(), e);
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(output);
+		}
+	}
+
+	private void remapUncached(Nested nested, Remapper remapper, String mappingsName, Map<String, Target> targets, Target target, Path output, MemoryScheduler scheduler) throws IOException {
+		Files.createDirectories(output.getParent());
+
+		Path input = Files.createTempFile(output.getParent(), nested.hash(), ".input.jar");
+		Path temp = Files.createTempFile(output.getParent(), nested.hash(), ".tmp");
+
+		try {
+			Files.write(input, nested.data());
+			remapper.remap(input, List.of(input), temp, target.mappings(), target.classpath());
+			Files.delete(input);
+
+			if (!nested.children().isEmpty()) {
+				remapInto(temp, nested.children(), remapper, mappingsName, targets, scheduler);
+			}
+
+			Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(input);
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * A jar nested in another one, held in memory unless it was already remapped.
+	 * @param data the content of the jar, or null if it's already in the cache
+	 * @param namespace the mappings namespace from the mod metadata, or null if the jar isn't a mod or is cached
+	 */
+	public record Nested(String name, byte[] data, String hash, String namespace, List<Nested> children) {
+		public boolean isCached() {
+			return data == null;
+		}
+	}
+
+	public record Target(MappingSet mappings, List<Path> classpath) {
+	}
+}
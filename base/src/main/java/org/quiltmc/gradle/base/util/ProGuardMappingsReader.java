@@ -0,0 +1,217 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.InnerClassMapping;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads ProGuard mappings, the format Mojang publishes its mappings in, as obfuscated to named mappings.
+ * <p>
+ * The file is memory-mapped and read line by line twice: once for the class names, since member descriptors have to be
+ * in the obfuscated namespace, and once for the members. Names and descriptors are interned, ProGuard repeats the same
+ * types on almost every line.
+ */
+public final class ProGuardMappingsReader {
+	private static final Map<String, String> PRIMITIVES = Map.of(
+			"void", "V", "boolean", "Z", "byte", "B", "char", "C", "short", "S", "int", "I", "long", "J", "float", "F", "double", "D"
+	);
+
+	private final MappedByteBuffer buffer;
+	private final Map<String, String> pool = new HashMap<>();
+	// Named internal name -> obfuscated internal name
+	private final Map<String, String> classes = new HashMap<>();
+	// Named type -> obfuscated descriptor
+	private final Map<String, String> descriptors = new HashMap<>();
+	private byte[] line = new byte[256];
+
+	private ProGuardMappingsReader(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public static MappingSet read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new ProGuardMappingsReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).read();
+		}
+	}
+
+	private MappingSet read() {
+		readClasses();
+
+		MappingSet mappings = MappingSet.create();
+		ClassMapping<?, ?> current = null;
+		buffer.rewind();
+
+		String str;
+		while ((str = nextLine()) != null) {
+			if (str.isEmpty() || str.charAt(0) == '#') {
+				continue;
+			}
+
+			int arrow = str.indexOf(" -> ");
+			if (arrow < 0) {
+				continue;
+			}
+
+			if (!Character.isWhitespace(str.charAt(0))) {
+				String named = intern(str.substring(0, arrow).replace('.', '/'));
+				String obfuscated = classes.get(named);
+
+				if (obfuscated == null) {
+					current = null;
+					continue;
+				}
+
+				current = mappings.getOrCreateClassMapping(obfuscated);
+				// Inner class mappings only hold the part after their outer class
+				current.setDeobfuscatedName(current instanceof InnerClassMapping ? named.substring(named.lastIndexOf('$') + 1) : named);
+			} else if (current != null) {
+				readMember(current, str.substring(0, arrow).trim(), str.substring(arrow + 4).trim());
+			}
+		}
+
+		return mappings;
+	}
+
+	private void readClasses() {
+		String str;
+		while ((str = nextLine()) != null) {
+			if (str.isEmpty() || str.charAt(0) == '#' || Character.isWhitespace(str.charAt(0))) {
+				continue;
+			}
+
+			int arrow = str.indexOf(" -> ");
+			if (arrow >= 0 && str.endsWith(":")) {
+				classes.put(intern(str.substring(0, arrow).replace('.', '/')), intern(str.substring(arrow + 4, str.length() - 1).replace('.', '/')));
+			}
+		}
+	}
+
+	private void readMember(ClassMapping<?, ?> owner, String named, String obfuscated) {
+		int paren = named.indexOf('(');
+
+		if (paren < 0) {
+			// "type name"
+			int space = named.indexOf(' ');
+			String name = named.substring(space + 1);
+
+			if (!name.equals(obfuscated)) {
+				owner.getOrCreateFieldMapping(new FieldSignature(obfuscated, FieldType.of(toDescriptor(named.substring(0, space))))).setDeobfuscatedName(name);
+			}
+
+			return;
+		}
+
+		// "[from:to:]return name(arguments)[:from:to]", line numbers are ignored
+		int start = 0;
+		while (start < paren && (Character.isDigit(named.charAt(start)) || named.charAt(start) == ':')) {
+			start++;
+		}
+
+		int space = named.indexOf(' ', start);
+		String name = named.substring(space + 1, paren);
+
+		// Inlined methods are qualified by their class, and constructors keep their names
+		if (name.indexOf('.') >= 0 || name.startsWith("<") || name.equals(obfuscated)) {
+			return;
+		}
+
+		StringBuilder descriptor = new StringBuilder("(");
+		String arguments = named.substring(paren + 1, named.indexOf(')', paren));
+
+		if (!arguments.isEmpty()) {
+			for (String argument : arguments.split(",")) {
+				descriptor.append(toDescriptor(argument));
+			}
+		}
+
+		descriptor.append(')').append(toDescriptor(named.substring(start, space)));
+		owner.getOrCreateMethodMapping(new MethodSignature(obfuscated, MethodDescriptor.of(descriptor.toString()))).setDeobfuscatedName(name);
+	}
+
+	private String toDescriptor(String type) {
+		String descriptor = descriptors.get(type);
+
+		if (descriptor == null) {
+			int dimensions = 0;
+			String element = type;
+
+			while (element.endsWith("[]")) {
+				dimensions++;
+				element = element.substring(0, element.length() - 2);
+			}
+
+			String primitive = PRIMITIVES.get(element);
+			if (primitive != null) {
+				descriptor = "[".repeat(dimensions) + primitive;
+			} else {
+				String internal = element.replace('.', '/');
+				descriptor = "[".repeat(dimensions) + "L" + classes.getOrDefault(internal, internal) + ";";
+			}
+
+			descriptor = intern(descriptor);
+			descriptors.put(intern(type), descriptor);
+		}
+
+		return descriptor;
+	}
+
+	private String intern(String str) {
+		String existing = pool.putIfAbsent(str, str);
+		return existing != null ? existing : str;
+	}
+
+	private String nextLine() {
+		if (!buffer.hasRemaining()) {
+			return null;
+		}
+
+		int length = 0;
+
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+
+			if (b == '\n') {
+				break;
+			} else if (b != '\r') {
+				if (length == line.length) {
+					byte[] grown = new byte[length * 2];
+					System.arraycopy(line, 0, grown, 0, length);
+					line = grown;
+				}
+
+				line[length++] = b;
+			}
+		}
+
+		return new String(line, 0, length, StandardCharsets.UTF_8);
+	}
+}
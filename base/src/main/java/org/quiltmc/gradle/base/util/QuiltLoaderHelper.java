@@ -23,19 +23,31 @@
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 @Deprecated
 public class QuiltLoaderHelper {
 	Project project;
+	private final File cache;
+	private final LibrarySnapshot snapshot;
 
-	public QuiltLoaderHelper(Project project) {
+	/**
+	 * @param cache the directory to store the library list of each loader version in
+	 * @param snapshot resolves the libraries, shared by all source sets with the same loader
+	 */
+	public QuiltLoaderHelper(Project project, File cache, LibrarySnapshot snapshot) {
 		this.project = project;
+		this.cache = cache;
+		this.snapshot = snapshot;
 	}
 
 	public void provideLibraries(Configuration loaderConf, Configuration librariesConf) throws IOException, JsonParserException {
@@ -44,16 +56,54 @@ public void provideLibraries(Configuration loaderConf, Configuration librariesCo
 		}
 
 		File loaderJar = loaderConf.getSingleFile();
+		String hash = hash(loaderJar);
 
-		Path installer = FileSystems.newFileSystem(loaderJar.toPath()).getPath("quilt_installer.json");
-		BufferedReader reader = Files.newBufferedReader(installer);
+		snapshot.provide("loader:" + hash, readLibraries(loaderJar, hash), librariesConf);
+	}
+
+	private List<String> readLibraries(File loaderJar, String hash) throws IOException, JsonParserException {
+		Path cached = cache.toPath().resolve(hash + ".txt");
+
+		if (Files.exists(cached)) {
+			return Files.readAllLines(cached, StandardCharsets.UTF_8);
+		}
 
-		JsonArray libraries = JsonParser.object().from(reader).getObject("libraries").getArray("common");
+		List<String> names = new ArrayList<>();
 
-		for (Object obj : libraries) {
-			if (obj instanceof JsonObject jsonObj && jsonObj.containsKey("name")) {
-				project.getDependencies().add(librariesConf.getName(), jsonObj.getString("name"));
+		try (ZipFile zip = new ZipFile(loaderJar)) {
+			ZipEntry installer = zip.getEntry("quilt_installer.json");
+
+			if (installer == null) {
+				throw new IllegalStateException("Could not find quilt_installer.json in " + loaderJar.getName());
 			}
+
+			try (Reader reader = new InputStreamReader(zip.getInputStream(installer), StandardCharsets.UTF_8)) {
+				JsonArray common = JsonParser.object().from(reader).getObject("libraries").getArray("common");
+
+				for (Object obj : common) {
+					if (obj instanceof JsonObject jsonObj && jsonObj.containsKey("name")) {
+						names.add(jsonObj.getString("name"));
+					}
+				}
+			}
+		}
+
+		Files.createDirectories(cached.getParent());
+		Path temp = Files.createTempFile(cached.getParent(), hash, ".tmp");
+		Files.write(temp, names, StandardCharsets.UTF_8);
+		Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING);
+
+		return names;
+	}
+
+	// Loader jars in Gradle's cache never change in place, so their location and timestamp identify them without reading them
+	private static String hash(File file) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update((file.getAbsolutePath() + "\n" + file.length() + "\n" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
 	}
 }
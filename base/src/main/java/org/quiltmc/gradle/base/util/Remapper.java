@@ -17,15 +17,29 @@
 package org.quiltmc.gradle.base.util;
 
 import net.fabricmc.tinyremapper.IMappingProvider;
-import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyRemapperConfiguration;
 import org.cadixdev.lorenz.MappingSet;
 import org.cadixdev.lorenz.model.*;
+import org.objectweb.asm.ClassReader;
 
 import java.io.File;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class Remapper {
 	private static final Map<String, String> JAVAX_TO_JETBRAINS = Map.of(
@@ -34,35 +48,341 @@ public class Remapper {
 			"javax/annotation/concurrent/Immutable", "org/jetbrains/annotations/Unmodifiable"
 	);
 
+	// Bump whenever the remapper configuration changes, to invalidate cached classes
+	private static final String CONFIG_VERSION = "1";
+	// "path:size:mtime" of a classpath jar -> SHA-256 of its content, hierarchy indexes are shared by every remap
+	private static final Map<String, String> CLASSPATH_HASHES = new ConcurrentHashMap<>();
+
+	private final int compression;
+	private final ClassCache classCache;
+	// Every dependency remapped with the same mappings shares their digest
+	private final Map<MappingSet, MappingsDigest> digests = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	public Remapper() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param compression the deflate level for remapped classes, see {@link JarWriter}
+	 */
+	public Remapper(int compression) {
+		this(compression, null);
+	}
+
+	/**
+	 * @param classCache the cache to look up remapped classes in before remapping them, or null
+	 */
+	public Remapper(int compression, ClassCache classCache) {
+		this.compression = compression;
+		this.classCache = classCache;
+	}
+
+	public int getCompression() {
+		return compression;
+	}
+
+	/**
+	 * @return the digest of the given mappings, computed once per mapping set for this remapper
+	 */
+	public MappingsDigest digest(MappingSet mappings) {
+		return digests.computeIfAbsent(mappings, MappingsDigest::of);
+	}
+
+	/**
+	 * @return a hash of the content of the given classpath, the same for equal jars wherever they are stored
+	 */
+	public static String fingerprint(List<Path> classpath) throws IOException {
+		MessageDigest digest = sha256();
+
+		for (Path path : classpath) {
+			String stamp = path.toAbsolutePath() + ":" + Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+			String hash = CLASSPATH_HASHES.get(stamp);
+
+			if (hash == null) {
+				MessageDigest content = sha256();
+				try (InputStream in = new DigestInputStream(Files.newInputStream(path), content)) {
+					in.transferTo(OutputStream.nullOutputStream());
+				}
+
+				hash = HexFormat.of().formatHex(content.digest());
+				CLASSPATH_HASHES.put(stamp, hash);
+			}
+
+			digest.update((hash + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Picks the earlier output {@link #remapIncremental} can patch, which has to be remapped against the same classpath.
+	 * Outputs for another game version share mappings history with the current one, but not the hierarchy.
+	 * @param candidates earlier outputs of the same classes with other mappings, newest first
+	 * @return the output to patch, or null if there is none
+	 */
+	public static Path findPrevious(List<Path> candidates, List<Path> classpath) throws IOException {
+		if (candidates.isEmpty()) {
+			return null;
+		}
+
+		String fingerprint = fingerprint(classpath);
+		for (Path candidate : candidates) {
+			if (fingerprint.equals(MappingsDigest.readClasspath(candidate))) {
+				return candidate;
+			}
+		}
+
+		return null;
+	}
+
     public void remap(File inFile, File outFile, MappingSet mappings, boolean overwrite) {
+		remap(inFile, outFile, mappings, List.of(), overwrite);
+	}
+
+	/**
+	 * Remaps a jar, resolving inherited members against the given classpath.
+	 * @param classpath the classpath in the source namespace of the mappings, usually a {@link ClassHierarchyIndex}
+	 */
+	public void remap(File inFile, File outFile, MappingSet mappings, List<Path> classpath, boolean overwrite) {
         if (overwrite || !outFile.exists()) {
-			TinyRemapper remapper = TinyRemapper.newRemapper()
-					.withMappings(createProvider(mappings))
-					.withMappings(out -> JAVAX_TO_JETBRAINS.forEach(out::acceptClass))
-					.configuration(new TinyRemapperConfiguration(
-							false,
-							true,
-							false,
-							false,
-							false,
-							true,
-							false,
-							true,
-							Pattern.compile("\\$\\$\\d+|c_[a-z]{8}"),
-							true))
-					.build();
-
-			try (OutputConsumerPath outputConsumer = new OutputConsumerPath.Builder(outFile.toPath()).build()) {
-				outputConsumer.addNonClassFiles(inFile.toPath());
-				remapper.readInputs(inFile.toPath());
-				remapper.apply(outputConsumer);
+			remap(inFile.toPath(), List.of(inFile.toPath()), outFile.toPath(), mappings, classpath);
+		}
+    }
+
+	/**
+	 * Remaps the classes of one jar into the output, copying the non-class entries of the given jars verbatim.
+	 * @param resources the jars to copy non-class entries from, earlier jars taking precedence
+	 */
+	public void remap(Path classes, List<Path> resources, Path output, MappingSet mappings, List<Path> classpath) {
+		if (classCache != null) {
+			try {
+				remapCached(classes, resources, output, mappings, classpath);
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to remap jar", e);
+			}
+
+			return;
+		}
+
+		TinyRemapper remapper = createRemapper(mappings);
+
+		try (JarWriter writer = new JarWriter(output, compression)) {
+			// Only classes go through the remapper, everything else is copied over as-is
+			for (Path jar : resources) {
+				writer.addNonClassFiles(jar);
+			}
+
+			remapper.readClassPath(classpath.toArray(new Path[0]));
+			remapper.readInputs(classes);
+			remapper.apply(writer);
+			writer.finish();
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to remap jar", e);
+		} finally {
+			remapper.finish();
+		}
+	}
+
+	/**
+	 * Remaps a jar like {@link #remap(Path, List, Path, MappingSet, List)}, but reuses an earlier remap of the same
+	 * classes with other mappings if there is one. Only the classes affected by the difference between both mappings are
+	 * remapped again, the rest is copied from the earlier output. The mappings used are recorded next to the output, along
+	 * with the classpath.
+	 * @param previous an earlier output of this method for the same classes and classpath, see {@link #findPrevious}, or
+	 * null
+	 * @return the number of classes which went through the remapper
+	 */
+	public int remapIncremental(Path classes, List<Path> resources, Path output, Path previous, MappingSet mappings, List<Path> classpath) throws IOException {
+		MappingsDigest digest = digest(mappings);
+		MappingsDigest previousDigest = previous == null ? null : MappingsDigest.read(previous);
+		Set<String> allClasses = listClasses(classes);
+		int remapped = allClasses.size();
+
+		if (previousDigest == null) {
+			remap(classes, resources, output, mappings, classpath);
+		} else {
+			Set<String> affected = digest.diff(previousDigest).findAffected(classes);
+
+			// Past a point, patching costs more than remapping everything
+			if (affected.size() > allClasses.size() / 2) {
+				remap(classes, resources, output, mappings, classpath);
+			} else {
+				remapPartial(classes, allClasses, affected, previous, resources, output, mappings, classpath);
+				remapped = affected.size();
+			}
+		}
+
+		digest.write(output, fingerprint(classpath));
+		return remapped;
+	}
+
+	private void remapPartial(Path classes, Set<String> allClasses, Set<String> affected, Path previous, List<Path> resources, Path output, MappingSet mappings, List<Path> classpath) throws IOException {
+		// Multi-release variants aren't tracked and always go through the remapper again
+		Path subset = writeSubset(classes, output, name -> name.startsWith("META-INF/") || affected.contains(name));
+
+		try {
+			TinyRemapper remapper = createRemapper(mappings);
+
+			try (JarWriter writer = new JarWriter(output, compression)) {
+				for (Path jar : resources) {
+					writer.addNonClassFiles(jar);
+				}
+
+				// The full jar stays on the classpath so the hierarchy of the unaffected classes is still known
+				List<Path> fullClasspath = new ArrayList<>(classpath);
+				fullClasspath.add(0, classes);
+
+				remapper.readClassPath(fullClasspath.toArray(new Path[0]));
+				remapper.readInputs(subset);
+				remapper.apply(writer);
+
+				// Unaffected classes are named the same as in the earlier output, by definition
+				org.objectweb.asm.commons.Remapper names = remapper.getEnvironment().getRemapper();
+				Set<String> unaffected = new HashSet<>();
+				for (String name : allClasses) {
+					if (!affected.contains(name)) {
+						unaffected.add(names.map(name) + ".class");
+					}
+				}
+
+				writer.addEntries(previous, unaffected::contains);
+				writer.finish();
 			} catch (Exception e) {
 				throw new RuntimeException("Failed to remap jar", e);
 			} finally {
 				remapper.finish();
 			}
+		} finally {
+			Files.deleteIfExists(subset);
 		}
-    }
+	}
+
+	private void remapCached(Path classes, List<Path> resources, Path output, MappingSet mappings, List<Path> classpath) throws IOException {
+		Map<String, byte[]> inputs = new HashMap<>();
+
+		try (ZipFile zip = new ZipFile(classes.toFile())) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				String name = entry.getName();
+
+				if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+					try (InputStream in = zip.getInputStream(entry)) {
+						inputs.put(name.substring(0, name.length() - ".class".length()), in.readAllBytes());
+					}
+				}
+			}
+		}
+
+		// The classpath is covered class by class, so updating a library only misses for the classes referring to it
+		Map<String, String> keys = classCache.getKeys(inputs, CONFIG_VERSION + " " + digest(mappings).fingerprint(), classpath);
+		Map<String, byte[]> hits = new HashMap<>();
+		keys.forEach((name, key) -> {
+			byte[] cached = classCache.get(key);
+			if (cached != null) {
+				hits.put(name, cached);
+			}
+		});
+
+		Path subset = writeSubset(classes, output, name -> name.startsWith("META-INF/") || !hits.containsKey(name));
+		TinyRemapper remapper = createRemapper(mappings);
+
+		try (JarWriter writer = new JarWriter(output, compression)) {
+			for (Path jar : resources) {
+				writer.addNonClassFiles(jar);
+			}
+
+			// Cached classes aren't read again, their hierarchy still has to be known for the others
+			List<Path> fullClasspath = new ArrayList<>(classpath);
+			fullClasspath.add(0, classes);
+
+			Map<String, byte[]> remapped = new ConcurrentHashMap<>();
+			remapper.readClassPath(fullClasspath.toArray(new Path[0]));
+			remapper.readInputs(subset);
+			remapper.apply((name, bytes) -> {
+				writer.accept(name, bytes);
+				remapped.put(name, bytes);
+			});
+
+			hits.forEach((name, bytes) -> writer.accept(new ClassReader(bytes).getClassName(), bytes));
+
+			org.objectweb.asm.commons.Remapper names = remapper.getEnvironment().getRemapper();
+			for (Map.Entry<String, String> entry : keys.entrySet()) {
+				byte[] bytes = remapped.get(names.map(entry.getKey()));
+
+				if (!hits.containsKey(entry.getKey()) && bytes != null) {
+					classCache.put(entry.getValue(), bytes);
+				}
+			}
+
+			writer.finish();
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to remap jar", e);
+		} finally {
+			remapper.finish();
+			Files.deleteIfExists(subset);
+		}
+	}
+
+	/**
+	 * Copies the classes of a jar accepted by the filter into a temporary jar next to the output.
+	 * @param filter tests the internal name of a class, including the multi-release prefix if any
+	 */
+	private static Path writeSubset(Path classes, Path output, Predicate<String> filter) throws IOException {
+		Path subset = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".subset.jar");
+
+		try (JarWriter writer = new JarWriter(subset, Deflater.NO_COMPRESSION)) {
+			writer.addEntries(classes, name -> name.endsWith(".class") && filter.test(name.substring(0, name.length() - ".class".length())));
+			writer.finish();
+		} catch (IOException e) {
+			Files.deleteIfExists(subset);
+			throw e;
+		}
+
+		return subset;
+	}
+
+	private static Set<String> listClasses(Path jar) throws IOException {
+		Set<String> classes = new HashSet<>();
+
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				String name = entry.getName();
+
+				if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+					classes.add(name.substring(0, name.length() - ".class".length()));
+				}
+			}
+		}
+
+		return classes;
+	}
+
+	private static TinyRemapper createRemapper(MappingSet mappings) {
+		return TinyRemapper.newRemapper()
+				.withMappings(createProvider(mappings))
+				.withMappings(out -> JAVAX_TO_JETBRAINS.forEach(out::acceptClass))
+				.configuration(new TinyRemapperConfiguration(
+						false,
+						true,
+						false,
+						false,
+						false,
+						true,
+						false,
+						true,
+						Pattern.compile("\\$\\$\\d+|c_[a-z]{8}"),
+						true))
+				.build();
+	}
 
 	private static IMappingProvider createProvider(MappingSet mappings) {
 		return acceptor -> {
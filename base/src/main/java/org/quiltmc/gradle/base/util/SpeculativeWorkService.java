@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs work in the background which the build will likely, but not certainly, need. Work is started during
+ * configuration and awaited by whatever needs its result, anything still running when the build finishes wasn't needed
+ * and is cancelled.
+ * <p>
+ * Work must not touch Gradle's model, such as resolving configurations, as it doesn't run on a thread Gradle manages.
+ */
+public abstract class SpeculativeWorkService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "QuiltGradle speculative work");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+
+	public <T> Future<T> submit(Callable<T> work) {
+		Future<T> future = executor.submit(work);
+		futures.add(future);
+		return future;
+	}
+
+	/**
+	 * Waits for the given work to complete.
+	 * @return the result of the work
+	 */
+	public static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for background work", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException runtime ? runtime : new RuntimeException(e.getCause());
+		}
+	}
+
+	@Override
+	public void close() {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.objectweb.asm.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Strips a jar down to the parts the compiler needs: class and member signatures, annotations and constants.
+ * <p>
+ * Method bodies, private members, debug information and resources are dropped. A new constant pool is built from what
+ * is left, so a stub only changes when the API of the jar does.
+ */
+public final class StubGenerator {
+	private StubGenerator() {
+	}
+
+	public static void write(Path input, Path output) throws IOException {
+		try (JarWriter writer = new JarWriter(output, Deflater.NO_COMPRESSION); ZipFile zip = new ZipFile(input.toFile())) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				String name = entry.getName();
+
+				// Multi-release variants are left out as well, javac only reads the base classes of a classpath jar
+				if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
+					continue;
+				}
+
+				try (InputStream in = zip.getInputStream(entry)) {
+					byte[] stub = stub(in.readAllBytes());
+
+					if (stub != null) {
+						writer.put(name, stub);
+					}
+				}
+			}
+
+			writer.finish();
+		}
+	}
+
+	/**
+	 * @return the stubbed class, or null if the class isn't part of the API at all
+	 */
+	static byte[] stub(byte[] bytes) {
+		ClassReader reader = new ClassReader(bytes);
+
+		if ((reader.getAccess() & Opcodes.ACC_SYNTHETIC) != 0) {
+			return null;
+		}
+
+		// Not passing the reader on, its constant pool still has everything the code referred to
+		ClassWriter writer = new ClassWriter(0);
+
+		reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+			@Override
+			public void visitSource(String source, String debug) {
+			}
+
+			@Override
+			public void visitNestHost(String nestHost) {
+			}
+
+			@Override
+			public void visitNestMember(String nestMember) {
+			}
+
+			@Override
+			public void visitOuterClass(String owner, String name, String descriptor) {
+				// The enclosing method may well be private
+				super.visitOuterClass(owner, null, null);
+			}
+
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				return isApi(access) ? super.visitField(access, name, descriptor, signature, value) : null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				if (!isApi(access)) {
+					return null;
+				}
+
+				MethodVisitor visitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+
+				// Keep annotations and annotation defaults, drop the code
+				return new MethodVisitor(Opcodes.ASM9, visitor) {
+					@Override
+					public void visitCode() {
+						mv = null;
+					}
+				};
+			}
+		}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return writer.toByteArray();
+	}
+
+	private static boolean isApi(int access) {
+		return (access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) == 0;
+	}
+}
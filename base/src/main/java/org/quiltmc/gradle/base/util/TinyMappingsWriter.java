@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes a mapping set as tiny v2 with two namespaces, so composed mappings can be handed to another process.
+ */
+public final class TinyMappingsWriter {
+	private TinyMappingsWriter() {
+	}
+
+	/**
+	 * Writes the mappings to the given file, replacing it atomically.
+	 */
+	public static void write(MappingSet mappings, Path file) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+
+		try {
+			try (Writer writer = new BufferedWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+				writer.write("tiny\t2\t0\tsource\ttarget\n");
+
+				for (TopLevelClassMapping classMapping : mappings.getTopLevelClassMappings()) {
+					writeClass(classMapping, writer);
+				}
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void writeClass(ClassMapping<?, ?> classMapping, Writer writer) throws IOException {
+		writer.write("c\t" + classMapping.getFullObfuscatedName() + "\t" + classMapping.getFullDeobfuscatedName() + "\n");
+
+		for (FieldMapping field : classMapping.getFieldMappings()) {
+			writer.write("\tf\t" + field.getType().orElseThrow() + "\t" + field.getObfuscatedName() + "\t" + field.getDeobfuscatedName() + "\n");
+		}
+
+		for (MethodMapping method : classMapping.getMethodMappings()) {
+			writer.write("\tm\t" + method.getObfuscatedDescriptor() + "\t" + method.getObfuscatedName() + "\t" + method.getDeobfuscatedName() + "\n");
+
+			for (MethodParameterMapping parameter : method.getParameterMappings()) {
+				writer.write("\t\tp\t" + parameter.getIndex() + "\t\t" + parameter.getDeobfuscatedName() + "\n");
+			}
+		}
+
+		for (InnerClassMapping innerClass : classMapping.getInnerClassMappings()) {
+			writeClass(innerClass, writer);
+		}
+	}
+}
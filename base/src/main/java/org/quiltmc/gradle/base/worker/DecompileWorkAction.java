@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.worker;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.jetbrains.java.decompiler.main.decompiler.ConsoleDecompiler;
+import org.quiltmc.gradle.base.jfr.DecompileEvent;
+
+import java.io.File;
+
+/**
+ * Decompiles a jar in a worker, which may be a separate process kept alive between builds.
+ */
+public abstract class DecompileWorkAction implements WorkAction<DecompileWorkAction.Parameters> {
+	public interface Parameters extends WorkParameters {
+		RegularFileProperty getInput();
+		RegularFileProperty getOutput();
+	}
+
+	@Override
+	public void execute() {
+		File input = getParameters().getInput().get().getAsFile();
+		DecompileEvent event = new DecompileEvent();
+		event.begin();
+
+		ConsoleDecompiler.main(new String[]{"-log=ERROR",  "-ind=\t", input.getAbsolutePath(), getParameters().getOutput().get().getAsFile().getAbsolutePath()});
+		event.finish(input);
+	}
+}
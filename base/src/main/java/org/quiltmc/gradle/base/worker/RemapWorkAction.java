@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.worker;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.quiltmc.gradle.base.util.MappingsProvider;
+import org.quiltmc.gradle.base.util.Remapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remaps a jar in a worker, which may be a separate process kept alive between builds.
+ */
+public abstract class RemapWorkAction implements WorkAction<RemapWorkAction.Parameters> {
+	// Worker processes are reused across builds, so keep the last few mapping sets around instead of reading them every time
+	private static final int CACHED_MAPPINGS = 4;
+	private static final Map<String, MappingSet> MAPPINGS = new LinkedHashMap<>(CACHED_MAPPINGS, 0.75F, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, MappingSet> eldest) {
+			return size() > CACHED_MAPPINGS;
+		}
+	};
+
+	public interface Parameters extends WorkParameters {
+		RegularFileProperty getInput();
+		RegularFileProperty getOutput();
+
+		/**
+		 * The mappings in tiny v2, see {@link org.quiltmc.gradle.base.util.TinyMappingsWriter}.
+		 */
+		RegularFileProperty getMappings();
+		ConfigurableFileCollection getClasspath();
+		Property<Integer> getCompression();
+
+		/**
+		 * Whether to keep the mappings around for later work. Only worth it in a worker process, in the daemon they'd
+		 * stay in memory for as long as it lives.
+		 */
+		Property<Boolean> getCacheMappings();
+	}
+
+	@Override
+	public void execute() {
+		Parameters parameters = getParameters();
+		List<Path> classpath = parameters.getClasspath().getFiles().stream().map(File::toPath).toList();
+		File mappingsFile = parameters.getMappings().get().getAsFile();
+		MappingSet mappings;
+
+		try {
+			mappings = parameters.getCacheMappings().get() ? getMappings(mappingsFile) : MappingsProvider.readMappings(mappingsFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read mappings", e);
+		}
+
+		File input = parameters.getInput().get().getAsFile();
+
+		try {
+			new Remapper(parameters.getCompression().get()).remap(input, parameters.getOutput().get().getAsFile(), mappings, classpath, true);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to remap " + input.getName(), e);
+		}
+	}
+
+	private static MappingSet getMappings(File file) throws IOException {
+		// Mapping files are named after their content, but guard against them being rewritten anyway
+		String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+
+		synchronized (MAPPINGS) {
+			MappingSet mappings = MAPPINGS.get(key);
+
+			if (mappings == null) {
+				mappings = MappingsProvider.readMappings(file);
+				MAPPINGS.put(key, mappings);
+			}
+
+			return mappings;
+		}
+	}
+}
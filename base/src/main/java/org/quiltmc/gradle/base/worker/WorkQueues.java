@@ -0,0 +1,37 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.quiltmc.gradle.base.worker;
+
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+public final class WorkQueues {
+	private WorkQueues() {
+	}
+
+	/**
+	 * Gets a queue running work either in the Gradle daemon or in a separate worker process. Gradle keeps worker
+	 * processes alive between builds and reuses them for work with the same heap size, so they stay warm.
+	 * @param heap the maximum heap size of the worker process, such as {@code 2G}
+	 */
+	public static WorkQueue get(WorkerExecutor executor, boolean process, String heap) {
+		if (!process) {
+			return executor.noIsolation();
+		}
+
+		return executor.processIsolation(spec -> spec.forkOptions(options -> options.setMaxHeapSize(heap)));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpRemoteCacheTest {
+	private static final String KEY = "org/example/mod-1.0/0123abcd/4567ef.jar";
+
+	@TempDir
+	Path temp;
+
+	private LocalCacheServer server;
+	private Path served;
+
+	@BeforeEach
+	void start() throws IOException {
+		served = temp.resolve("served");
+		server = new LocalCacheServer(served, 0);
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void storeThenLoad() throws IOException {
+		Path source = write("source.jar", "remapped content");
+		Path target = temp.resolve("target.jar");
+
+		new HttpRemoteCache(server.getUri(), true).store(KEY, source);
+
+		assertTrue(Files.isRegularFile(served.resolve(KEY)));
+		assertTrue(Files.isRegularFile(served.resolve(KEY + ".sha256")));
+		assertTrue(new HttpRemoteCache(server.getUri(), false).load(KEY, target));
+		assertEquals("remapped content", Files.readString(target));
+	}
+
+	@Test
+	void loadMissing() throws IOException {
+		Path target = temp.resolve("target.jar");
+
+		assertFalse(new HttpRemoteCache(server.getUri(), false).load(KEY, target));
+		assertFalse(Files.exists(target));
+	}
+
+	@Test
+	void loadRejectsChecksumMismatch() throws IOException {
+		new HttpRemoteCache(server.getUri(), true).store(KEY, write("source.jar", "remapped content"));
+		Files.writeString(served.resolve(KEY), "tampered content");
+
+		Path target = temp.resolve("target.jar");
+
+		assertFalse(new HttpRemoteCache(server.getUri(), false).load(KEY, target));
+		assertFalse(Files.exists(target));
+	}
+
+	@Test
+	void loadIgnoresEntryWithoutChecksum() throws IOException {
+		new HttpRemoteCache(server.getUri(), true).store(KEY, write("source.jar", "remapped content"));
+		Files.delete(served.resolve(KEY + ".sha256"));
+
+		assertFalse(new HttpRemoteCache(server.getUri(), false).load(KEY, temp.resolve("target.jar")));
+	}
+
+	@Test
+	void storeWithoutPush() throws IOException {
+		new HttpRemoteCache(server.getUri(), false).store(KEY, write("source.jar", "remapped content"));
+
+		assertFalse(Files.exists(served.resolve(KEY)));
+	}
+
+	private Path write(String name, String content) throws IOException {
+		Path file = temp.resolve(name);
+		Files.writeString(file, content);
+		return file;
+	}
+}
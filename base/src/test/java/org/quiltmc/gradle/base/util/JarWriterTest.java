@@ -0,0 +1,239 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarWriterTest {
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+	@TempDir
+	Path temp;
+
+	@Test
+	void copiesEntriesWrittenWithDataDescriptors() throws IOException {
+		Map<String, byte[]> contents = inputContents();
+		Path input = temp.resolve("input.jar");
+		writeZip(input, contents);
+
+		// Streamed deflated entries leave CRC and sizes out of the local header
+		ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(input)).order(ByteOrder.LITTLE_ENDIAN);
+		assertNotEquals(0, header.getShort(6) & 8);
+
+		byte[] remapped = text("remapped class", 200);
+		Path output = temp.resolve("output.jar");
+
+		try (JarWriter writer = new JarWriter(output)) {
+			writer.addEntries(input, name -> true);
+			writer.put("Bar.class", remapped);
+			writer.finish();
+		}
+
+		Map<String, byte[]> expected = new HashMap<>(contents);
+		expected.put("Bar.class", remapped);
+		assertRoundTrip(output, expected);
+	}
+
+	@Test
+	void storesEntriesWithoutCompression() throws IOException {
+		Map<String, byte[]> contents = inputContents();
+		Path output = temp.resolve("output.jar");
+
+		try (JarWriter writer = new JarWriter(output, Deflater.NO_COMPRESSION)) {
+			contents.forEach(writer::put);
+			writer.finish();
+		}
+
+		assertRoundTrip(output, contents);
+
+		try (ZipFile zip = new ZipFile(output.toFile())) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				assertEquals(ZipEntry.STORED, entry.getMethod());
+			}
+		}
+	}
+
+	@Test
+	void recompressesZip64Inputs() throws IOException {
+		byte[] kept = text("kept", 500);
+		Path input = temp.resolve("zip64.jar");
+
+		// More entries than the end of central directory record can count
+		try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(input)))) {
+			for (int i = 0; i < 0xFFFF; i++) {
+				out.putNextEntry(new ZipEntry("filler/" + i));
+				out.closeEntry();
+			}
+
+			out.putNextEntry(new ZipEntry("kept.txt"));
+			out.write(kept);
+			out.closeEntry();
+		}
+
+		// Without a comment the end of central directory record takes the last 22 bytes, its entry count is then the Zip64 marker
+		byte[] bytes = Files.readAllBytes(input);
+		assertEquals(0xFFFF, Short.toUnsignedInt(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getShort(bytes.length - 22 + 10)));
+
+		Path output = temp.resolve("output.jar");
+
+		try (JarWriter writer = new JarWriter(output)) {
+			writer.addEntries(input, name -> !name.startsWith("filler/"));
+			writer.finish();
+		}
+
+		assertRoundTrip(output, Map.of("kept.txt", kept));
+	}
+
+	@Test
+	void sameInputsWriteSameBytes() throws IOException {
+		// The manifest isn't the first entry of the input
+		Path input = temp.resolve("input.jar");
+		writeZip(input, inputContents());
+
+		Map<String, byte[]> classes = new HashMap<>();
+		for (int i = 0; i < 20; i++) {
+			classes.put("pkg/C" + i + ".class", text("class " + i, 20 + i));
+		}
+
+		for (int level : new int[] {Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION}) {
+			byte[] first = null;
+
+			for (int order = 0; order < 4; order++) {
+				List<String> names = new ArrayList<>(classes.keySet());
+				Collections.shuffle(names, new Random(order));
+				Path output = temp.resolve("output-" + level + "-" + order + ".jar");
+
+				try (JarWriter writer = new JarWriter(output, level)) {
+					if (order % 2 == 0) {
+						writer.addNonClassFiles(input);
+					}
+
+					for (String name : names) {
+						writer.put(name, classes.get(name));
+					}
+
+					if (order % 2 != 0) {
+						writer.addNonClassFiles(input);
+					}
+
+					writer.finish();
+				}
+
+				try (ZipFile zip = new ZipFile(output.toFile())) {
+					assertEquals(MANIFEST, zip.entries().nextElement().getName());
+				}
+
+				byte[] bytes = Files.readAllBytes(output);
+				if (first == null) {
+					first = bytes;
+				} else {
+					assertArrayEquals(first, bytes, "Compression level " + level + ", order " + order);
+				}
+			}
+		}
+	}
+
+	private static Map<String, byte[]> inputContents() {
+		byte[] random = new byte[4096];
+		new Random(42).nextBytes(random);
+
+		Map<String, byte[]> contents = new HashMap<>();
+		contents.put(MANIFEST, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+		contents.put("assets/lang/en_us.json", text("{\"key\": \"value\"}", 100));
+		contents.put("assets/random.bin", random);
+		contents.put("empty.txt", new byte[0]);
+		contents.put("Foo.class", text("class bytes", 50));
+		return contents;
+	}
+
+	private static byte[] text(String line, int repeat) {
+		return (line + "\n").repeat(repeat).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void writeZip(Path jar, Map<String, byte[]> contents) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+			for (String name : new TreeSet<>(contents.keySet())) {
+				out.putNextEntry(new ZipEntry(name));
+				out.write(contents.get(name));
+				out.closeEntry();
+			}
+		}
+	}
+
+	private static void assertRoundTrip(Path jar, Map<String, byte[]> expected) throws IOException {
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			List<? extends ZipEntry> entries = Collections.list(zip.entries());
+			assertEquals(expected.keySet(), new HashSet<>(entries.stream().map(ZipEntry::getName).toList()));
+			assertEquals(expected.size(), entries.size());
+
+			for (ZipEntry entry : entries) {
+				byte[] data;
+				try (InputStream in = zip.getInputStream(entry)) {
+					data = in.readAllBytes();
+				}
+
+				CRC32 crc = new CRC32();
+				crc.update(data);
+
+				assertArrayEquals(expected.get(entry.getName()), data, entry.getName());
+				assertEquals(crc.getValue(), entry.getCrc(), entry.getName());
+				assertEquals(data.length, entry.getSize(), entry.getName());
+
+				if (entry.getMethod() == ZipEntry.STORED) {
+					assertEquals(entry.getSize(), entry.getCompressedSize(), entry.getName());
+				}
+			}
+		}
+
+		// Reads the local headers instead of the central directory, and checks CRCs and sizes against them
+		try (JarInputStream in = new JarInputStream(Files.newInputStream(jar))) {
+			assertEquals(expected.containsKey(MANIFEST), in.getManifest() != null);
+
+			Map<String, byte[]> read = new HashMap<>();
+			JarEntry entry;
+			while ((entry = in.getNextJarEntry()) != null) {
+				read.put(entry.getName(), in.readAllBytes());
+			}
+
+			Map<String, byte[]> withoutManifest = new HashMap<>(expected);
+			withoutManifest.remove(MANIFEST);
+
+			assertEquals(withoutManifest.keySet(), read.keySet());
+			withoutManifest.forEach((name, data) -> assertArrayEquals(data, read.get(name), name));
+		}
+	}
+}
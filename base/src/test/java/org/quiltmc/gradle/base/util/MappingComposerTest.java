@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MappingComposerTest {
+	private static final MappingComposer COMPOSER = new MappingComposer();
+
+	private static MappingSet intermediate;
+	private static MappingSet named;
+
+	@BeforeAll
+	static void load() throws IOException, URISyntaxException {
+		intermediate = read("intermediary.tiny");
+		named = read("named.tiny");
+	}
+
+	@Test
+	void reverse() {
+		assertSameMembers(intermediate.reverse(), COMPOSER.reverse(intermediate));
+	}
+
+	@Test
+	void merge() {
+		assertSameMembers(intermediate.merge(named), COMPOSER.merge(intermediate, named));
+	}
+
+	@Test
+	void target() {
+		MappingSet lorenz = intermediate.reverse().merge(named).reverse();
+		MappingSet composer = COMPOSER.reverse(COMPOSER.merge(COMPOSER.reverse(intermediate), named));
+
+		assertSameMembers(lorenz, composer);
+	}
+
+	@Test
+	void via() {
+		MappingSet lorenz = intermediate.reverse().merge(intermediate.merge(named));
+		MappingSet composer = COMPOSER.merge(COMPOSER.reverse(intermediate), COMPOSER.merge(intermediate, named));
+
+		assertSameMembers(lorenz, composer);
+	}
+
+	private static void assertSameMembers(MappingSet expected, MappingSet actual) {
+		Set<String> expectedMembers = members(expected);
+
+		assertFalse(expectedMembers.isEmpty());
+		assertEquals(expectedMembers, members(actual));
+	}
+
+	/**
+	 * Lists the classes, fields and methods of a mapping set. Parameters are left out, since Lorenz doesn't carry them
+	 * through merges consistently.
+	 */
+	private static Set<String> members(MappingSet mappings) {
+		Set<String> members = new TreeSet<>();
+
+		for (ClassMapping<?, ?> mapping : mappings.getTopLevelClassMappings()) {
+			addMembers(mapping, members);
+		}
+
+		return members;
+	}
+
+	private static void addMembers(ClassMapping<?, ?> mapping, Set<String> members) {
+		String owner = mapping.getFullObfuscatedName();
+		members.add("class " + owner + " -> " + mapping.getFullDeobfuscatedName());
+
+		for (FieldMapping field : mapping.getFieldMappings()) {
+			String type = field.getType().map(Object::toString).orElse("");
+			members.add("field " + owner + "." + field.getObfuscatedName() + ":" + type + " -> " + field.getDeobfuscatedName());
+		}
+
+		for (MethodMapping method : mapping.getMethodMappings()) {
+			members.add("method " + owner + "." + method.getObfuscatedName() + method.getObfuscatedDescriptor() + " -> " + method.getDeobfuscatedName());
+		}
+
+		for (ClassMapping<?, ?> inner : mapping.getInnerClassMappings()) {
+			addMembers(inner, members);
+		}
+	}
+
+	private static MappingSet read(String name) throws IOException, URISyntaxException {
+		return MappingsProvider.readMappings(new File(MappingComposerTest.class.getResource("/mappings/" + name).toURI()));
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.TopLevelClassMapping;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappingsDigestTest {
+	@TempDir
+	Path temp;
+
+	@Test
+	void diffFindsChangedClassesAndMembers() {
+		MappingsDigest.Diff diff = MappingsDigest.of(mappings("pkg/New", "execute")).diff(MappingsDigest.of(mappings("pkg/Old", "run")));
+
+		// Inner classes change with their outer class, classes with changed members count as changed too
+		assertEquals(Set.of("a", "a$1", "c"), diff.classes());
+		assertEquals(Set.of("m ()V"), diff.members());
+	}
+
+	@Test
+	void diffOfSameMappingsIsEmpty() {
+		assertTrue(MappingsDigest.of(mappings("pkg/Old", "run")).diff(MappingsDigest.of(mappings("pkg/Old", "run"))).isEmpty());
+		assertEquals(MappingsDigest.of(mappings("pkg/Old", "run")).fingerprint(), MappingsDigest.of(mappings("pkg/Old", "run")).fingerprint());
+		assertNotEquals(MappingsDigest.of(mappings("pkg/Old", "run")).fingerprint(), MappingsDigest.of(mappings("pkg/New", "run")).fingerprint());
+	}
+
+	@Test
+	void findAffected() throws IOException {
+		Map<String, byte[]> classes = new TreeMap<>();
+		classes.put("a", generate("a", writer -> {}));
+		classes.put("e", generate("e", writer -> {}));
+		// Changed class in a method descriptor
+		classes.put("x", generate("x", writer -> writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "use", "(La;)V", null, null).visitEnd()));
+		// Unmapped inner class of a changed class
+		classes.put("g", generate("g", writer -> writer.visitField(Opcodes.ACC_PUBLIC, "inner", "La$2;", null, null).visitEnd()));
+		// Changed class only in a generic signature
+		classes.put("h", generate("h", writer -> writer.visitField(Opcodes.ACC_PUBLIC, "list", "Ljava/util/List;", "Ljava/util/List<La;>;", null).visitEnd()));
+		// Changed method called through an unchanged subclass
+		classes.put("i", generate("i", writer -> {
+			MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "call", "(Le;)V", null, null);
+			method.visitCode();
+			method.visitVarInsn(Opcodes.ALOAD, 1);
+			method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "e", "m", "()V", false);
+			method.visitInsn(Opcodes.RETURN);
+			method.visitMaxs(0, 0);
+			method.visitEnd();
+		}));
+		// Changed method overridden
+		classes.put("j", generate("j", writer -> writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "m", "()V", null, null).visitEnd()));
+		// Unrelated, including a member with an unchanged mapping
+		classes.put("k", generate("k", writer -> {
+			writer.visitField(Opcodes.ACC_PUBLIC, "f", "I", null, null).visitEnd();
+			writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "get", "()Ljava/lang/String;", null, null).visitEnd();
+		}));
+
+		Path jar = temp.resolve("input.jar");
+		try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				out.putNextEntry(new ZipEntry(entry.getKey() + ".class"));
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+		}
+
+		MappingsDigest.Diff diff = MappingsDigest.of(mappings("pkg/New", "execute")).diff(MappingsDigest.of(mappings("pkg/Old", "run")));
+
+		assertEquals(Set.of("a", "x", "g", "h", "i", "j"), diff.findAffected(jar));
+	}
+
+	@Test
+	void writeAndRead() throws IOException {
+		Path jar = temp.resolve("output.jar");
+		MappingsDigest digest = MappingsDigest.of(mappings("pkg/Old", "run"));
+
+		assertNull(MappingsDigest.read(jar));
+		assertNull(MappingsDigest.readClasspath(jar));
+
+		digest.write(jar, "0123abcd");
+
+		MappingsDigest read = MappingsDigest.read(jar);
+		assertNotNull(read);
+		assertTrue(digest.diff(read).isEmpty());
+		assertEquals(digest.fingerprint(), read.fingerprint());
+		assertEquals("0123abcd", MappingsDigest.readClasspath(jar));
+	}
+
+	private static MappingSet mappings(String a, String m) {
+		MappingSet mappings = MappingSet.create();
+
+		TopLevelClassMapping classA = mappings.createTopLevelClassMapping("a", a);
+		classA.createInnerClassMapping("1", "Inner");
+
+		TopLevelClassMapping classC = mappings.createTopLevelClassMapping("c", "pkg/C");
+		classC.createFieldMapping(new FieldSignature("f", FieldType.of("I")), "count");
+		classC.createMethodMapping(new MethodSignature("m", MethodDescriptor.of("()V")), m);
+
+		mappings.createTopLevelClassMapping("d", "pkg/D");
+		mappings.createTopLevelClassMapping("e", "pkg/E");
+		return mappings;
+	}
+
+	private static byte[] generate(String name, Consumer<ClassWriter> members) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, name, null, "java/lang/Object", null);
+		members.accept(writer);
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import org.cadixdev.bombe.type.FieldType;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.FieldSignature;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProGuardMappingsReaderTest {
+	private static MappingSet mappings;
+
+	@BeforeAll
+	static void load() throws IOException, URISyntaxException {
+		mappings = ProGuardMappingsReader.read(Path.of(ProGuardMappingsReaderTest.class.getResource("/mappings/client.txt").toURI()));
+	}
+
+	@Test
+	void classes() {
+		assertEquals("com/example/Outer", outer().getFullDeobfuscatedName());
+		assertEquals("com/example/Helper", mappings.getTopLevelClassMapping("b").orElseThrow().getFullDeobfuscatedName());
+	}
+
+	@Test
+	void innerClasses() {
+		ClassMapping<?, ?> inner = outer().getInnerClassMapping("a").orElseThrow();
+
+		assertEquals("Inner", inner.getDeobfuscatedName());
+		assertEquals("com/example/Outer$Inner", inner.getFullDeobfuscatedName());
+		assertEquals("flag", field(inner, "a", "B"));
+		assertEquals("outer", method(inner, "a", "(CS)La;"));
+	}
+
+	@Test
+	void fieldDescriptors() {
+		assertEquals("count", field(outer(), "a", "I"));
+		assertEquals("names", field(outer(), "b", "[[Ljava/lang/String;"));
+		assertEquals("inner", field(outer(), "c", "La$a;"));
+
+		// Unobfuscated fields are left out
+		assertEquals(3, outer().getFieldMappings().size());
+	}
+
+	@Test
+	void methodDescriptors() {
+		assertEquals("values", method(outer(), "b", "(JLa$a;[Z)[I"));
+		assertEquals("plain", method(outer(), "c", "(F)D"));
+
+		// Classes without mappings keep their name in descriptors
+		assertEquals("unknown", method(mappings.getTopLevelClassMapping("b").orElseThrow(), "a", "()Lcom/example/Unmapped;"));
+	}
+
+	@Test
+	void lineNumberedAndInlinedMethods() {
+		// Split by line numbers and followed by a method inlined into it, all under the same obfuscated name
+		assertEquals("tick", method(outer(), "a", "()V"));
+
+		// Constructors and unobfuscated methods are left out
+		assertEquals(3, outer().getMethodMappings().size());
+		assertTrue(outer().getMethodMappings().stream().map(MethodMapping::getObfuscatedName).noneMatch(name -> name.startsWith("<") || name.equals("keepName")));
+	}
+
+	private static ClassMapping<?, ?> outer() {
+		return mappings.getTopLevelClassMapping("a").orElseThrow();
+	}
+
+	private static String field(ClassMapping<?, ?> owner, String name, String descriptor) {
+		return owner.getFieldMapping(new FieldSignature(name, FieldType.of(descriptor))).map(FieldMapping::getDeobfuscatedName).orElse(null);
+	}
+
+	private static String method(ClassMapping<?, ?> owner, String name, String descriptor) {
+		return owner.getMethodMapping(new MethodSignature(name, MethodDescriptor.of(descriptor))).map(MethodMapping::getDeobfuscatedName).orElse(null);
+	}
+}
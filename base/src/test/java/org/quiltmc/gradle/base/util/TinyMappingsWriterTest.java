@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.base.util;
+
+import net.fabricmc.mappingio.MappingReader;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+import org.cadixdev.bombe.type.MethodDescriptor;
+import org.cadixdev.bombe.type.signature.MethodSignature;
+import org.cadixdev.lorenz.MappingSet;
+import org.cadixdev.lorenz.model.ClassMapping;
+import org.cadixdev.lorenz.model.FieldMapping;
+import org.cadixdev.lorenz.model.MethodMapping;
+import org.cadixdev.lorenz.model.MethodParameterMapping;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TinyMappingsWriterTest {
+	@TempDir
+	Path temp;
+
+	@Test
+	void roundTripThroughMappingIo() throws IOException, URISyntaxException {
+		MappingSet mappings = ProGuardMappingsReader.read(Path.of(TinyMappingsWriterTest.class.getResource("/mappings/client.txt").toURI()));
+		mappings.getTopLevelClassMapping("a").orElseThrow()
+				.getOrCreateMethodMapping(new MethodSignature("b", MethodDescriptor.of("(JLa$a;[Z)[I")))
+				.createParameterMapping(1, "time");
+
+		Path file = temp.resolve("mappings.tiny");
+		TinyMappingsWriter.write(mappings, file);
+
+		MemoryMappingTree tree = new MemoryMappingTree();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			MappingReader.read(reader, tree);
+		}
+
+		assertEquals("source", tree.getSrcNamespace());
+		assertEquals(List.of("target"), tree.getDstNamespaces());
+
+		MappingTree.ClassMapping outer = tree.getClass("a");
+		assertEquals("com/example/Outer", outer.getDstName(0));
+		assertEquals("com/example/Outer$Inner", tree.getClass("a$a").getDstName(0));
+		assertEquals("names", outer.getField("b", "[[Ljava/lang/String;").getDstName(0));
+		assertEquals("values", outer.getMethod("b", "(JLa$a;[Z)[I").getDstName(0));
+		assertEquals("outer", tree.getClass("a$a").getMethod("a", "(CS)La;").getDstName(0));
+
+		// Read back into Lorenz the way the remap workers do, everything including parameters has to survive
+		assertEquals(members(mappings), members(MappingsProvider.readMappings(file.toFile())));
+	}
+
+	private static Set<String> members(MappingSet mappings) {
+		Set<String> members = new TreeSet<>();
+
+		for (ClassMapping<?, ?> mapping : mappings.getTopLevelClassMappings()) {
+			addMembers(mapping, members);
+		}
+
+		return members;
+	}
+
+	private static void addMembers(ClassMapping<?, ?> mapping, Set<String> members) {
+		String owner = mapping.getFullObfuscatedName();
+		members.add("class " + owner + " -> " + mapping.getFullDeobfuscatedName());
+
+		for (FieldMapping field : mapping.getFieldMappings()) {
+			members.add("field " + owner + "." + field.getObfuscatedName() + ":" + field.getType().orElseThrow() + " -> " + field.getDeobfuscatedName());
+		}
+
+		for (MethodMapping method : mapping.getMethodMappings()) {
+			members.add("method " + owner + "." + method.getObfuscatedName() + method.getObfuscatedDescriptor() + " -> " + method.getDeobfuscatedName());
+
+			for (MethodParameterMapping parameter : method.getParameterMappings()) {
+				members.add("parameter " + owner + "." + method.getObfuscatedName() + method.getObfuscatedDescriptor() + "@" + parameter.getIndex() + " -> " + parameter.getDeobfuscatedName());
+			}
+		}
+
+		for (ClassMapping<?, ?> inner : mapping.getInnerClassMappings()) {
+			addMembers(inner, members);
+		}
+	}
+}
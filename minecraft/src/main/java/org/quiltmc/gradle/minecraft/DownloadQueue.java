@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.minecraft;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Downloads files on a few background threads, each file only once however many versions or source sets ask for it.
+ * Files are written through a temporary file, so an interrupted download never leaves a partial file behind. Shared by
+ * every project of a build, the threads are stopped once the build finishes.
+ */
+public abstract class DownloadQueue implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+	private static final int THREADS = 4;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+		Thread thread = new Thread(runnable, "QuiltGradle download");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Map<Path, CompletableFuture<File>> downloads = new ConcurrentHashMap<>();
+
+	/**
+	 * @param label describes the file in progress logs
+	 * @return the target, once downloaded
+	 */
+	CompletableFuture<File> download(URL url, File target, String label, Logger logger) {
+		if (target.exists()) {
+			return CompletableFuture.completedFuture(target);
+		}
+
+		return downloads.computeIfAbsent(target.toPath().toAbsolutePath(), path -> CompletableFuture.supplyAsync(() -> {
+			long start = System.nanoTime();
+			logger.lifecycle("QuiltGradle: Downloading {}", label);
+
+			try {
+				Files.createDirectories(path.getParent());
+				Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+				try {
+					try (InputStream in = url.openStream()) {
+						Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+					}
+
+					Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+				} finally {
+					Files.deleteIfExists(temp);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to download " + url, e);
+			}
+
+			logger.lifecycle("QuiltGradle: Downloaded {} ({} KB in {} ms)", label, target.length() >> 10, (System.nanoTime() - start) / 1_000_000);
+			return target;
+		}, executor));
+	}
+
+	/**
+	 * Waits for a download, rethrowing its failure.
+	 */
+	static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException io) {
+				throw io.getCause();
+			} else if (e.getCause() instanceof RuntimeException runtime) {
+				throw runtime;
+			}
+
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
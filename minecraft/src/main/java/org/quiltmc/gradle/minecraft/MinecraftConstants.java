@@ -19,5 +19,10 @@
 public final class MinecraftConstants {
 	public static final String EXTENSION = "minecraft";
 	public static final String REPO = "minecraft";
+	public static final String GROUP = "net.minecraft";
 	public static final String VERSION_MANIFEST = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
+	/**
+	 * System property overriding the version manifest URL, for testing against a local server
+	 */
+	public static final String VERSION_MANIFEST_PROPERTY = "quilt.gradle.minecraft.versionManifest";
 }
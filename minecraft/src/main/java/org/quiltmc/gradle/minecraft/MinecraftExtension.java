@@ -18,9 +18,11 @@
 
 import com.grack.nanojson.JsonParserException;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 
 import java.io.IOException;
+import java.util.List;
 
 public class MinecraftExtension {
 	private final MinecraftProvider minecraftProvider;
@@ -29,6 +31,23 @@ public MinecraftExtension(MinecraftProvider minecraftProvider) {
 		this.minecraftProvider = minecraftProvider;
 	}
 
+	/**
+	 * Whether to write the merged game jar to disk before remapping it. By default, the client and server jars are
+	 * merged in memory while remapping and the merged jar is only written if something else resolves it.
+	 */
+	public Property<Boolean> getKeepMergedJar() {
+		return minecraftProvider.getKeepMergedJar();
+	}
+
+	/**
+	 * Downloads the given versions concurrently, for projects building against several versions from different source
+	 * sets. Call this before declaring their game dependencies. To also remap each version in the background while the
+	 * other source sets configure, enable {@link org.quiltmc.gradle.base.api.QuiltGradleExtension#getSpeculativeGameRemap()}.
+	 */
+	public void versions(String... versions) throws IOException, JsonParserException {
+		minecraftProvider.prefetch(List.of(versions));
+	}
+
 	public Dependency merged(Provider<String> version) throws JsonParserException, IOException {
 		return merged(version.get());
 	}
@@ -18,18 +18,24 @@
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.ArtifactRepositoryContainer;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.repositories.IvyArtifactRepository;
+import org.gradle.api.provider.Provider;
 import org.quiltmc.gradle.base.Constants;
 import org.quiltmc.gradle.base.QuiltGradlePlugin;
 import org.quiltmc.gradle.base.api.QuiltGradleExtension;
 
 import java.io.File;
+import java.util.Set;
 
 public class MinecraftPlugin implements Plugin<Project> {
+	private static final Set<String> REMOTE_REPOSITORIES = Set.of("Quilt", "Fabric", ArtifactRepositoryContainer.DEFAULT_MAVEN_CENTRAL_REPO_NAME);
+	private static final Set<String> MOJANG_GROUPS = Set.of("oshi-project", "com.paulscode", "tv.twitch", "org.lwjgl.lwjgl", "argo", "lzma");
+
 	@Override
 	public void apply(Project project) {
-		project.getPlugins().apply(QuiltGradlePlugin.class);
+		QuiltGradlePlugin basePlugin = project.getPlugins().apply(QuiltGradlePlugin.class);
 		project.getLogger().lifecycle("QuiltGradle: Setting up Minecraft plugin");
 
 		QuiltGradleExtension quiltGradle = QuiltGradleExtension.get(project);
@@ -44,30 +50,48 @@ public void apply(Project project) {
 			repo.setUrl(minecraftRepo);
 			repo.patternLayout(layout -> layout.artifact("[revision]/[artifact].[ext]"));
 			repo.metadataSources(IvyArtifactRepository.MetadataSources::artifact);
+			repo.content(content -> content.includeGroup(MinecraftConstants.GROUP));
 		});
 
-		project.getRepositories().maven(repo -> {
-			repo.setName("Mojang Libraries");
-			repo.setUrl("https://libraries.minecraft.net");
-		});
+		// Libraries only published by Mojang, across old and new versions. The others are all on Maven Central
+		project.getRepositories().exclusiveContent(exclusive -> exclusive
+				.forRepository(() -> project.getRepositories().maven(repo -> {
+					repo.setName("Mojang Libraries");
+					repo.setUrl("https://libraries.minecraft.net");
+				}))
+				.filter(filter -> {
+					filter.includeGroupByRegex("com\\.mojang(\\..*)?");
+					MOJANG_GROUPS.forEach(filter::includeGroup);
+					filter.includeModule(MinecraftConstants.GROUP, "launchwrapper");
+				})
+		);
+
+		// Game jars only come from the cache above, remapped ones from the QuiltGradle repositories
+		project.getRepositories()
+				.matching(repo -> REMOTE_REPOSITORIES.contains(repo.getName()))
+				.configureEach(repo -> repo.content(content -> content.excludeGroup(MinecraftConstants.GROUP)));
 
 
 		// Setup extensions
-		MinecraftProvider minecraftProvider = new MinecraftProvider(project, minecraftRepo);
+		Provider<DownloadQueue> downloads = project.getGradle().getSharedServices().registerIfAbsent("quiltMinecraftDownloads", DownloadQueue.class, spec -> {});
+		MinecraftProvider minecraftProvider = new MinecraftProvider(project, minecraftRepo, basePlugin.getLibrarySnapshot(), downloads);
 		project.getExtensions().create(MinecraftConstants.EXTENSION, MinecraftExtension.class, minecraftProvider);
+		quiltGradle.registerGameJarSource(minecraftProvider);
 
 
 		// Setup functions to run in every source set
-		quiltGradle.registerPerSourceSet(sourceSet -> project.afterEvaluate(unused -> {
-			// Provide Minecraft libraries
+		quiltGradle.registerPerSourceSet(sourceSet -> {
+			// Provide Minecraft libraries lazily, as the game may already be remapped against them during evaluation
 			Configuration gameConf = quiltGradle.getConfigurationPerSourceSet(Constants.Configurations.GAME, sourceSet);
 			Configuration gameLibrariesConf = quiltGradle.getConfigurationPerSourceSet(Constants.Configurations.GAME_LIBRARIES, sourceSet);
 
-			try {
-				minecraftProvider.provideLibraries(gameConf, gameLibrariesConf);
-			} catch (Exception e) {
-				throw new RuntimeException("Failed to provide game libraries", e);
-			}
-		}));
+			gameLibrariesConf.withDependencies(dependencies -> {
+				try {
+					minecraftProvider.provideLibraries(gameConf, gameLibrariesConf);
+				} catch (Exception e) {
+					throw new RuntimeException("Failed to provide game libraries", e);
+				}
+			});
+		});
 	}
 }
@@ -20,25 +20,76 @@
 import com.grack.nanojson.JsonObject;
 import com.grack.nanojson.JsonParser;
 import com.grack.nanojson.JsonParserException;
+import net.fabricmc.stitch.merge.ClassMerger;
 import net.fabricmc.stitch.merge.JarMerger;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.quiltmc.gradle.base.api.GameJarSource;
+import org.quiltmc.gradle.base.api.QuiltGradleExtension;
+import org.quiltmc.gradle.base.api.RemoteCache;
+import org.quiltmc.gradle.base.jfr.DownloadEvent;
+import org.quiltmc.gradle.base.jfr.MergeJarsEvent;
+import org.quiltmc.gradle.base.util.JarWriter;
+import org.quiltmc.gradle.base.util.LibrarySnapshot;
+import org.quiltmc.gradle.base.util.ProGuardMappingsReader;
+import org.quiltmc.gradle.base.util.TinyMappingsWriter;
 
 import java.io.*;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
-import java.util.Map;
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class MinecraftProvider implements GameJarSource {
+	private static final byte[] MANIFEST = "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8);
 
-public class MinecraftProvider {
 	private final Project project;
 	private final File minecraftRepo;
+	private final LibrarySnapshot librarySnapshot;
+	private final Property<Boolean> keepMergedJar;
+	private final Provider<DownloadQueue> downloads;
+	private JsonObject manifest;
 
-	public MinecraftProvider(Project project, File minecraftRepo) {
+	public MinecraftProvider(Project project, File minecraftRepo, LibrarySnapshot librarySnapshot, Provider<DownloadQueue> downloads) {
 		this.project = project;
 		this.minecraftRepo = minecraftRepo;
+		this.librarySnapshot = librarySnapshot;
+		this.keepMergedJar = project.getObjects().property(Boolean.class).convention(false);
+		this.downloads = downloads;
+	}
+
+	public Property<Boolean> getKeepMergedJar() {
+		return keepMergedJar;
+	}
+
+	/**
+	 * Downloads the client and server jars of the given versions concurrently, so that the source sets using them
+	 * find them on disk. Only downloads, game remaps stay where {@link QuiltGradleExtension#getSpeculativeGameRemap()}
+	 * puts them.
+	 */
+	public void prefetch(List<String> versions) throws IOException, JsonParserException {
+		long start = System.nanoTime();
+		List<CompletableFuture<?>> futures = new ArrayList<>();
+
+		for (String version : versions) {
+			CompletableFuture<File> client = fetchAsync(version, "client", "client.jar");
+			CompletableFuture<File> server = fetchAsync(version, "server", "server.jar");
+
+			futures.add(CompletableFuture.allOf(client, server).thenRun(() ->
+					project.getLogger().lifecycle("QuiltGradle: Minecraft {} is ready ({} ms)", version, (System.nanoTime() - start) / 1_000_000)
+			));
+		}
+
+		DownloadQueue.join(CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)));
 	}
 
 	 public Dependency provideMinecraft(String version, String side) throws IOException, JsonParserException {
@@ -47,21 +98,122 @@ public Dependency provideMinecraft(String version, String side) throws IOExcepti
 	}
 
 	public Dependency provideMerged(String version) throws IOException, JsonParserException {
-		File client = download(version, "client", "client.jar");
-		File server = download(version, "server", "server.jar");
-		File merged = new File(client.getParentFile(), "merged.jar");
+		download(version, "client", "client.jar");
+		download(version, "server", "server.jar");
+
+		// The merged jar is only written once something resolves it, remapping merges the jars in memory instead
+		return project.getDependencies().create("net.minecraft:merged:" + version);
+	}
+
+	@Override
+	public boolean provides(Dependency dependency) {
+		return isMerged(dependency) && !keepMergedJar.get() && !getMergedJar(dependency.getVersion()).exists();
+	}
+
+	@Override
+	public void materialize(Dependency dependency) throws IOException {
+		if (isMerged(dependency)) {
+			File dir = new File(minecraftRepo, dependency.getVersion());
+			File merged = getMergedJar(dependency.getVersion());
+
+			if (!merged.exists()) {
+				RemoteCache remoteCache = QuiltGradleExtension.get(project).getRemoteCache().getOrNull();
+				String key = "net.minecraft/merged/" + dependency.getVersion() + "/merged.jar";
+
+				if (remoteCache == null || !remoteCache.load(key, merged.toPath())) {
+					mergeJars(dependency.getVersion(), new File(dir, "client.jar"), new File(dir, "server.jar"), merged);
+
+					if (remoteCache != null) {
+						remoteCache.store(key, merged.toPath());
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public List<Path> writeClasses(Dependency dependency, JarWriter writer) throws IOException {
+		File dir = new File(minecraftRepo, dependency.getVersion());
+		File client = new File(dir, "client.jar");
+		File server = new File(dir, "server.jar");
+
+		project.getLogger().lifecycle("QuiltGradle: Merging Minecraft jars in memory");
+		MergeJarsEvent event = new MergeJarsEvent();
+		event.begin();
+
+		// Same rules as stitch's JarMerger, but for classes only, resources are copied from the original jars
+		try (ZipFile clientZip = new ZipFile(client); ZipFile serverZip = new ZipFile(server)) {
+			Set<String> names = new TreeSet<>();
+			for (ZipFile zip : List.of(clientZip, serverZip)) {
+				zip.stream().map(ZipEntry::getName).filter(name -> name.endsWith(".class")).forEach(names::add);
+			}
+
+			names.parallelStream().forEach(name -> {
+				try {
+					byte[] data = mergeClass(name, clientZip, serverZip);
+					if (data != null) {
+						writer.put(name, data);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to merge " + name, e);
+				}
+			});
 
-		if (!merged.exists()) {
-			mergeJars(client, server, merged);
+			event.finish(dependency.getVersion(), client.length() + server.length(), names::size, true);
 		}
 
-		return project.getDependencies().create("net.minecraft:merged:" + version);
+		// The client's manifest holds the digests of its signature, which the merged classes no longer match
+		writer.put("META-INF/MANIFEST.MF", MANIFEST);
+
+		return List.of(client.toPath(), server.toPath());
+	}
+
+	private static byte[] mergeClass(String name, ZipFile clientZip, ZipFile serverZip) throws IOException {
+		ZipEntry clientEntry = clientZip.getEntry(name);
+		ZipEntry serverEntry = serverZip.getEntry(name);
+		boolean isMinecraft = clientEntry != null || name.startsWith("net/minecraft") || !name.contains("/");
+
+		if (clientEntry != null && serverEntry != null) {
+			byte[] clientData = read(clientZip, clientEntry);
+			byte[] serverData = read(serverZip, serverEntry);
+			return Arrays.equals(clientData, serverData) ? clientData : new ClassMerger().merge(clientData, serverData);
+		} else if (!isMinecraft) {
+			// Server bundles libraries, client doesn't - skip them
+			return null;
+		}
+
+		String side = clientEntry != null ? "CLIENT" : "SERVER";
+		ClassReader reader = new ClassReader(clientEntry != null ? read(clientZip, clientEntry) : read(serverZip, serverEntry));
+		ClassWriter writer = new ClassWriter(0);
+		reader.accept(new ClassMerger.SidedClassVisitor(Opcodes.ASM9, writer, side), 0);
+		return writer.toByteArray();
+	}
+
+	private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+		try (InputStream in = zip.getInputStream(entry)) {
+			return in.readAllBytes();
+		}
+	}
+
+	private static boolean isMerged(Dependency dependency) {
+		return "net.minecraft".equals(dependency.getGroup()) && "merged".equals(dependency.getName());
+	}
+
+	private File getMergedJar(String version) {
+		return new File(new File(minecraftRepo, version), "merged.jar");
 	}
 
 	public Dependency provideMojmap(String version) throws IOException, JsonParserException {
-		download(version, "client_mappings", "mojmap.txt");
-		return project.getDependencies().create("com.mojang:mojmap:" + version + "@txt");
+		File tiny = new File(new File(minecraftRepo, version), "mojmap.tiny");
+
+		// Converted once per version, tiny is much faster to read than ProGuard on every build
+		if (!tiny.exists()) {
+			File proGuard = download(version, "client_mappings", "mojmap.txt");
+			TinyMappingsWriter.write(ProGuardMappingsReader.read(proGuard.toPath()), tiny.toPath());
+		}
 
+		// Not under com.mojang, which only resolves from Mojang's library repository
+		return project.getDependencies().create(MinecraftConstants.GROUP + ":mojmap:" + version + "@tiny");
 	}
 
 	public void provideLibraries(Configuration gameConf, Configuration librariesConf) throws FileNotFoundException, JsonParserException {
@@ -75,70 +227,93 @@ public void provideLibraries(Configuration gameConf, Configuration librariesConf
 
 		JsonObject versionJson = JsonParser.object().from(new FileReader(localJson));
 		JsonArray libraries = versionJson.getArray("libraries");
+		List<String> coordinates = new ArrayList<>();
 
 		for (Object obj : libraries) {
 			if (obj instanceof JsonObject jsonObj) {
 				if (Boolean.parseBoolean(evaluateRules(jsonObj))) {
-					project.getDependencies().add(librariesConf.getName(), jsonObj.getString("name"));
+					coordinates.add(jsonObj.getString("name"));
 				}
 			}
 		}
+
+		librarySnapshot.provide("game:" + game.get().getVersion(), coordinates, librariesConf);
 	}
 
-	private void mergeJars(File client, File server, File merged) {
+	private void mergeJars(String version, File client, File server, File merged) {
+		MergeJarsEvent event = new MergeJarsEvent();
+		event.begin();
+
 		try(JarMerger merger = new JarMerger(client, server, merged)) {
 			project.getLogger().lifecycle("QuiltGradle: Merging Minecraft jars");
 			merger.merge();
 		} catch (IOException e) {
 			throw new UncheckedIOException("Failed to merge Minecraft jars.", e);
 		}
+
+		event.finish(version, client.length() + server.length(), () -> MergeJarsEvent.countClasses(merged.toPath()), false);
 	}
 
 	private File download(String version, String artifact, String output) throws IOException, JsonParserException {
-		File dir = new File(minecraftRepo, version);
-		dir.mkdirs();
+		DownloadEvent event = new DownloadEvent();
+		event.begin();
 
-		File target = new File(dir, output);
+		boolean cached = new File(new File(minecraftRepo, version), output).exists();
+		File target = fetch(version, artifact, output);
+		event.finish(version + "/" + artifact, target, cached);
 
-		JsonObject manifest = JsonParser.object().from(new URL(MinecraftConstants.VERSION_MANIFEST));
-		JsonArray versions = manifest.getArray("versions");
-		String versionUrl = null;
+		return target;
+	}
 
-		for (Object obj : versions) {
-			if (obj instanceof JsonObject jsonObj) {
-				if (version.equals(jsonObj.getString("id"))) {
-					versionUrl = jsonObj.getString("url");
-				}
-			}
+	private File fetch(String version, String artifact, String output) throws IOException, JsonParserException {
+		return DownloadQueue.join(fetchAsync(version, artifact, output));
+	}
+
+	private CompletableFuture<File> fetchAsync(String version, String artifact, String output) throws IOException, JsonParserException {
+		File dir = new File(minecraftRepo, version);
+		File target = new File(dir, output);
+		File localJson = new File(dir, "version.json");
+
+		// Everything is already cached, don't touch the network so offline builds keep working
+		if (target.exists() && localJson.exists()) {
+			return CompletableFuture.completedFuture(target);
 		}
 
+		String versionUrl = getVersionUrl(version);
 		if (versionUrl == null) {
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
-		URL url = new URL(versionUrl);
-		File localJson = new File(dir, "version.json");
-		if (!localJson.exists()) {
-			Files.copy(url.openStream(), localJson.toPath());
-		}
+		return downloads.get().download(new URL(versionUrl), localJson, version + " version.json", project.getLogger()).thenCompose(json -> {
+			try (Reader reader = new FileReader(json)) {
+				JsonObject download = JsonParser.object().from(reader).getObject("downloads").getObject(artifact);
 
-		JsonObject versionJson = JsonParser.object().from(new FileReader(localJson));
-		JsonObject download = versionJson.getObject("downloads").getObject(artifact);
+				if (download == null) {
+					throw new IllegalStateException("Could not find download for artifact " + artifact);
+				}
 
-		if (download == null) {
-			throw new IllegalStateException("Could not find download for artifact " + artifact);
-		}
+				return downloads.get().download(new URL(download.getString("url")), target, version + " " + output, project.getLogger());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (JsonParserException e) {
+				throw new RuntimeException("Failed to read version.json of " + version, e);
+			}
+		});
+	}
 
-		if (!target.exists()) {
-			URL downloadUrl = new URL(download.getString("url"));
-			Files.copy(downloadUrl.openStream(), target.toPath());
+	private synchronized String getVersionUrl(String version) throws IOException, JsonParserException {
+		// Fetched at most once per build, however many versions and artifacts are downloaded
+		if (manifest == null) {
+			manifest = JsonParser.object().from(new URL(System.getProperty(MinecraftConstants.VERSION_MANIFEST_PROPERTY, MinecraftConstants.VERSION_MANIFEST)));
 		}
 
-		if (!target.exists()) {
-			throw new RuntimeException("Failed to download " + artifact);
+		for (Object obj : manifest.getArray("versions")) {
+			if (obj instanceof JsonObject jsonObj && version.equals(jsonObj.getString("id"))) {
+				return jsonObj.getString("url");
+			}
 		}
 
-		return target;
+		return null;
 	}
 
 	private static String evaluateRules(JsonObject jsonObj) {
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.minecraft.perf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for Mojang's servers, serving the files of a directory over HTTP.
+ */
+final class FixtureServer implements AutoCloseable {
+	private final Path directory;
+	private final HttpServer server;
+	private final AtomicInteger requests = new AtomicInteger();
+
+	FixtureServer(Path directory) throws IOException {
+		this.directory = directory;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/", this::handle);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+	}
+
+	URI getUri() {
+		return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+	}
+
+	/**
+	 * @return the number of requests served since the last call
+	 */
+	int takeRequests() {
+		return requests.getAndSet(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			requests.incrementAndGet();
+			Path file = directory.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+
+			if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			exchange.sendResponseHeaders(200, Files.size(file));
+			try (OutputStream out = exchange.getResponseBody()) {
+				Files.copy(file, out);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.minecraft.perf;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a synthetic game, its mappings and mods, shaped like the real ones but small enough to build quickly.
+ * <p>
+ * Game classes are obfuscated as {@code c<i>} in the default package, with a field and two methods each and chains of
+ * ten classes inheriting from each other. Mods are in the intermediary namespace and extend and call game classes.
+ */
+final class Fixtures {
+	static final String GAME_VERSION = "perf-1";
+	static final String GROUP = "perf";
+
+	private final Path root;
+	private final int classes;
+	private final int mods;
+	private final int modClasses;
+
+	Fixtures(Path root, int classes, int mods, int modClasses) {
+		this.root = root;
+		this.classes = classes;
+		this.mods = mods;
+		this.modClasses = modClasses;
+	}
+
+	Path getMojang() {
+		return root.resolve("mojang");
+	}
+
+	Path getMaven() {
+		return root.resolve("maven");
+	}
+
+	int getMods() {
+		return mods;
+	}
+
+	void generate() throws IOException {
+		writeJar(getMojang().resolve("client.jar"), gameClasses(false));
+		writeJar(getMojang().resolve("server.jar"), gameClasses(true));
+
+		writeMaven("net.fabricmc", "intermediary", GAME_VERSION, Map.of("mappings/mappings.tiny", intermediary()));
+		writeMaven(GROUP, "named", "1", Map.of("mappings/mappings.tiny", named(false)));
+		writeMaven(GROUP, "named", "2", Map.of("mappings/mappings.tiny", named(true)));
+		writeMaven(GROUP, "loader", "1", Map.of("quilt_installer.json", "{\"libraries\":{\"common\":[]}}".getBytes(StandardCharsets.UTF_8)));
+
+		for (int mod = 0; mod < mods; mod++) {
+			writeMaven(GROUP, "mod" + mod, "1", modEntries(mod, false));
+			writeMaven(GROUP, "mod" + mod, "2", modEntries(mod, true));
+		}
+	}
+
+	/**
+	 * Writes the version manifest and version JSON, which point at the given server.
+	 */
+	void writeManifest(URI server) throws IOException {
+		Files.writeString(getMojang().resolve("version_manifest_v2.json"), """
+				{"versions": [{"id": "%s", "url": "%s"}]}
+				""".formatted(GAME_VERSION, server.resolve(GAME_VERSION + ".json")));
+
+		Files.writeString(getMojang().resolve(GAME_VERSION + ".json"), """
+				{
+					"id": "%s",
+					"downloads": {
+						"client": {"url": "%s"},
+						"server": {"url": "%s"}
+					},
+					"libraries": []
+				}
+				""".formatted(GAME_VERSION, server.resolve("client.jar"), server.resolve("server.jar")));
+	}
+
+	private Map<String, byte[]> gameClasses(boolean server) {
+		Map<String, byte[]> entries = new TreeMap<>();
+
+		for (int i = 0; i < classes; i++) {
+			// A third of the classes are client only
+			if (!server || i % 3 != 1) {
+				entries.put("c" + i + ".class", gameClass(i));
+			}
+		}
+
+		if (server) {
+			entries.put("perf/library/Library.class", emptyClass("perf/library/Library", "java/lang/Object"));
+		}
+
+		return entries;
+	}
+
+	private byte[] gameClass(int i) {
+		String name = "c" + i;
+		String superName = i % 10 == 0 ? "java/lang/Object" : "c" + (i - 1);
+		String other = "c" + ((i * 7 + 3) % classes);
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, superName, null);
+		writer.visitField(Opcodes.ACC_PUBLIC, "f" + i, "L" + other + ";", null, null).visitEnd();
+		writeConstructor(writer, superName);
+
+		MethodVisitor get = writer.visitMethod(Opcodes.ACC_PUBLIC, "m" + i, "()I", null, null);
+		get.visitCode();
+		get.visitLdcInsn(i);
+		get.visitInsn(Opcodes.IRETURN);
+		get.visitMaxs(0, 0);
+		get.visitEnd();
+
+		MethodVisitor call = writer.visitMethod(Opcodes.ACC_PUBLIC, "n" + i, "(L" + other + ";)I", null, null);
+		call.visitCode();
+		call.visitVarInsn(Opcodes.ALOAD, 1);
+		call.visitMethodInsn(Opcodes.INVOKEVIRTUAL, other, "m" + ((i * 7 + 3) % classes), "()I", false);
+		call.visitInsn(Opcodes.IRETURN);
+		call.visitMaxs(0, 0);
+		call.visitEnd();
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private byte[] intermediary() {
+		StringBuilder tiny = new StringBuilder("tiny\t2\t0\tofficial\tintermediary\n");
+
+		for (int i = 0; i < classes; i++) {
+			String other = "c" + ((i * 7 + 3) % classes);
+			tiny.append("c\tc").append(i).append("\tnet/minecraft/class_").append(i).append('\n');
+			tiny.append("\tf\tL").append(other).append(";\tf").append(i).append("\tfield_").append(i).append('\n');
+			tiny.append("\tm\t()I\tm").append(i).append("\tmethod_").append(2 * i).append('\n');
+			tiny.append("\tm\t(L").append(other).append(";)I\tn").append(i).append("\tmethod_").append(2 * i + 1).append('\n');
+		}
+
+		return tiny.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param bumped whether to rename some classes and methods, like a new mappings build would
+	 */
+	private byte[] named(boolean bumped) {
+		StringBuilder tiny = new StringBuilder("tiny\t2\t0\tintermediary\tnamed\n");
+
+		for (int i = 0; i < classes; i++) {
+			String other = "net/minecraft/class_" + ((i * 7 + 3) % classes);
+			String suffix = bumped && i % 50 == 0 ? "v2" : "";
+			String methodSuffix = bumped && i % 10 == 0 ? "v2" : "";
+
+			tiny.append("c\tnet/minecraft/class_").append(i).append("\tnet/minecraft/perf/Class").append(i).append(suffix).append('\n');
+			tiny.append("\tf\tL").append(other).append(";\tfield_").append(i).append("\tother").append(i).append('\n');
+			tiny.append("\tm\t()I\tmethod_").append(2 * i).append("\tget").append(i).append(methodSuffix).append('\n');
+			tiny.append("\tm\t(L").append(other).append(";)I\tmethod_").append(2 * i + 1).append("\tcall").append(i).append('\n');
+		}
+
+		return tiny.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param bumped whether to change some classes, like a new release of the mod would
+	 */
+	private Map<String, byte[]> modEntries(int mod, boolean bumped) {
+		Map<String, byte[]> entries = new TreeMap<>();
+		String id = "perf_mod" + mod;
+
+		entries.put("fabric.mod.json", """
+				{"schemaVersion": 1, "id": "%s", "version": "%s"}
+				""".formatted(id, bumped ? "2" : "1").getBytes(StandardCharsets.UTF_8));
+
+		for (int j = 0; j < modClasses; j++) {
+			int target = (mod * 31 + j) % classes;
+			String name = "perf/mod" + mod + "/C" + j;
+			String superName = "net/minecraft/class_" + target;
+
+			ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, superName, null);
+			writeConstructor(writer, superName);
+
+			MethodVisitor run = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()I", null, null);
+			run.visitCode();
+			run.visitVarInsn(Opcodes.ALOAD, 0);
+			run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, "method_" + (2 * target), "()I", false);
+			run.visitLdcInsn(bumped && j % 10 == 0 ? 2 : 1);
+			run.visitInsn(Opcodes.IADD);
+			run.visitInsn(Opcodes.IRETURN);
+			run.visitMaxs(0, 0);
+			run.visitEnd();
+
+			writer.visitEnd();
+			entries.put(name + ".class", writer.toByteArray());
+		}
+
+		return entries;
+	}
+
+	private static byte[] emptyClass(String name, String superName) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, superName, null);
+		writeConstructor(writer, superName);
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private static void writeConstructor(ClassWriter writer, String superName) {
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+	}
+
+	private void writeMaven(String group, String name, String version, Map<String, byte[]> entries) throws IOException {
+		Path dir = getMaven().resolve(group.replace('.', '/')).resolve(name).resolve(version);
+		writeJar(dir.resolve(name + "-" + version + ".jar"), entries);
+	}
+
+	private static void writeJar(Path jar, Map<String, byte[]> entries) throws IOException {
+		Files.createDirectories(jar.getParent());
+
+		try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				out.putNextEntry(new ZipEntry(entry.getKey()));
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+		}
+	}
+}
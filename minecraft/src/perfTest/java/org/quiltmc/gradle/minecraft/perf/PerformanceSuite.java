@@ -0,0 +1,203 @@
+/*
+ * Copyright 2023 QuiltMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.quiltmc.gradle.minecraft.perf;
+
+import org.gradle.testkit.runner.GradleRunner;
+import org.quiltmc.gradle.minecraft.MinecraftConstants;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Measures builds of a project using the Minecraft plugin against synthetic inputs, see {@link Fixtures}.
+ * <p>
+ * Every run starts from an empty Gradle user home, and measures in order a cold build, a warm build with nothing
+ * changed, a build after a mappings update and one after updating every mod. The median of each scenario is written to
+ * {@code perf.output}, and compared to {@code perf.baseline} if it exists, failing if any scenario got slower by more
+ * than {@code perf.threshold}.
+ */
+public final class PerformanceSuite {
+	private static final List<String> SCENARIOS = List.of("cold", "warm", "mappingsBump", "modBump");
+
+	private PerformanceSuite() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path workDir = Path.of(System.getProperty("perf.workDir", "build/perf"));
+		Path output = Path.of(System.getProperty("perf.output", workDir.resolve("results.properties").toString()));
+		Path baseline = Path.of(System.getProperty("perf.baseline", workDir.resolve("baseline.properties").toString()));
+		double threshold = Double.parseDouble(System.getProperty("perf.threshold", "0.2"));
+		int runs = Integer.getInteger("perf.runs", 3);
+
+		Fixtures fixtures = new Fixtures(workDir.resolve("fixtures"), Integer.getInteger("perf.classes", 5000), Integer.getInteger("perf.mods", 20), Integer.getInteger("perf.modClasses", 200));
+		deleteRecursively(workDir.resolve("fixtures"));
+		fixtures.generate();
+
+		Map<String, List<Long>> timings = new LinkedHashMap<>();
+
+		try (FixtureServer server = new FixtureServer(fixtures.getMojang())) {
+			fixtures.writeManifest(server.getUri());
+
+			for (int run = 0; run < runs; run++) {
+				Path runDir = workDir.resolve("run");
+				deleteRecursively(runDir);
+
+				Path project = runDir.resolve("project");
+				GradleRunner runner = GradleRunner.create()
+						.withProjectDir(project.toFile())
+						.withTestKitDir(runDir.resolve("gradle-home").toFile())
+						.withPluginClasspath()
+						.withArguments("compileJava", "--stacktrace", "-D" + MinecraftConstants.VERSION_MANIFEST_PROPERTY + "=" + server.getUri().resolve("version_manifest_v2.json"));
+
+				writeProject(project, fixtures, "1", "1");
+				measure(timings, "cold", runner, server);
+				measure(timings, "warm", runner, server);
+
+				writeProject(project, fixtures, "2", "1");
+				measure(timings, "mappingsBump", runner, server);
+
+				writeProject(project, fixtures, "2", "2");
+				measure(timings, "modBump", runner, server);
+			}
+		}
+
+		Properties results = new Properties();
+		for (String scenario : SCENARIOS) {
+			results.setProperty(scenario, Long.toString(median(timings.get(scenario))));
+		}
+
+		Files.createDirectories(output.toAbsolutePath().getParent());
+		try (Writer writer = Files.newBufferedWriter(output)) {
+			results.store(writer, "Median build times in milliseconds");
+		}
+
+		compare(results, baseline, threshold);
+	}
+
+	private static void measure(Map<String, List<Long>> timings, String scenario, GradleRunner runner, FixtureServer server) {
+		long start = System.nanoTime();
+		runner.build();
+		long time = (System.nanoTime() - start) / 1_000_000;
+
+		timings.computeIfAbsent(scenario, s -> new ArrayList<>()).add(time);
+		System.out.printf("%-14s %6d ms, %d requests to the game server%n", scenario, time, server.takeRequests());
+	}
+
+	private static void compare(Properties results, Path baseline, double threshold) throws IOException {
+		if (Files.notExists(baseline)) {
+			System.out.println("No baseline at " + baseline + ", copy the results there to compare future runs against them");
+			return;
+		}
+
+		Properties expected = new Properties();
+		try (Reader reader = Files.newBufferedReader(baseline)) {
+			expected.load(reader);
+		}
+
+		List<String> regressions = new ArrayList<>();
+
+		for (String scenario : SCENARIOS) {
+			String value = expected.getProperty(scenario);
+			if (value == null) {
+				continue;
+			}
+
+			long before = Long.parseLong(value);
+			long after = Long.parseLong(results.getProperty(scenario));
+			System.out.printf("%-14s %6d ms -> %6d ms%n", scenario, before, after);
+
+			if (after > before * (1 + threshold)) {
+				regressions.add(scenario + " went from " + before + " ms to " + after + " ms");
+			}
+		}
+
+		if (!regressions.isEmpty()) {
+			throw new IllegalStateException("Build performance regressed by more than " + Math.round(threshold * 100) + "%: " + String.join(", ", regressions));
+		}
+	}
+
+	private static void writeProject(Path project, Fixtures fixtures, String mappingsVersion, String modVersion) throws IOException {
+		Files.createDirectories(project.resolve("src/main/java/perf"));
+		Files.writeString(project.resolve("settings.gradle"), "rootProject.name = 'perf'\n");
+
+		StringBuilder mods = new StringBuilder();
+		for (int mod = 0; mod < fixtures.getMods(); mod++) {
+			mods.append("\tmodImplementation '").append(Fixtures.GROUP).append(":mod").append(mod).append(':').append(modVersion).append("'\n");
+		}
+
+		Files.writeString(project.resolve("build.gradle"), """
+				plugins {
+					id 'org.quiltmc.gradle.minecraft'
+				}
+
+				repositories {
+					exclusiveContent {
+						forRepository {
+							maven {
+								url = '%s'
+								metadataSources { artifact() }
+							}
+						}
+						filter {
+							includeGroup '%s'
+							includeGroup 'net.fabricmc'
+						}
+					}
+				}
+
+				dependencies {
+					game minecraft.merged('%s')
+					intermediate 'net.fabricmc:intermediary:%s'
+					mappings '%s:named:%s'
+					loader '%s:loader:1'
+				%s}
+				""".formatted(fixtures.getMaven().toUri(), Fixtures.GROUP, Fixtures.GAME_VERSION, Fixtures.GAME_VERSION, Fixtures.GROUP, mappingsVersion, Fixtures.GROUP, mods));
+
+		// Class 1 is renamed by neither mappings version
+		Files.writeString(project.resolve("src/main/java/perf/PerfMod.java"), """
+				package perf;
+
+				public class PerfMod {
+					public int run(net.minecraft.perf.Class1 game) {
+						return game.get1();
+					}
+				}
+				""");
+	}
+
+	private static long median(List<Long> values) {
+		List<Long> sorted = new ArrayList<>(values);
+		Collections.sort(sorted);
+		return sorted.get(sorted.size() / 2);
+	}
+
+	private static void deleteRecursively(Path path) throws IOException {
+		if (Files.notExists(path)) {
+			return;
+		}
+
+		try (var paths = Files.walk(path)) {
+			for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(file);
+			}
+		}
+	}
+}